@@ -0,0 +1,330 @@
+package org.carlmontrobotics.commandvisualizer.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardLocation;
+
+/**
+ * Generates a {@code GeneratedDescriber} for every command class with {@code @Describe} members, and lists them in
+ * {@code META-INF/services} so that {@code CommandDescriptorFactory} registers them automatically. Add it to a robot
+ * project with {@code annotationProcessor 'org.carlmontrobotics:commandvisualizer-processor:<version>'}.
+ * <p>
+ * Generated describers read members directly, so members that the generated class could not access, and members that
+ * do not produce a value, are reported as build errors.
+ */
+@SupportedAnnotationTypes(DescribeProcessor.DESCRIBE)
+public class DescribeProcessor extends AbstractProcessor {
+
+    static final String PACKAGE = "org.carlmontrobotics.commandvisualizer";
+    static final String DESCRIBE = PACKAGE + ".Describe";
+    static final String GENERATED_DESCRIBER = PACKAGE + ".GeneratedDescriber";
+    static final String DESCRIBABLE = PACKAGE + ".Describable";
+    static final String COMMAND = "edu.wpi.first.wpilibj2.command.Command";
+    static final String SUFFIX = "_Describer";
+
+    private Elements elements;
+    private Types types;
+    private Filer filer;
+    private Messager messager;
+    // Generated describers by binary name, with the command classes they were generated from
+    private final Map<String, TypeElement> generated = new TreeMap<>();
+
+    private static class Member {
+        final Element element;
+        final String parameter;
+
+        Member(Element element, String parameter) {
+            this.element = element;
+            this.parameter = parameter;
+        }
+    }
+
+    @Override
+    public synchronized void init(ProcessingEnvironment processingEnv) {
+        super.init(processingEnv);
+        elements = processingEnv.getElementUtils();
+        types = processingEnv.getTypeUtils();
+        filer = processingEnv.getFiler();
+        messager = processingEnv.getMessager();
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if(roundEnv.processingOver()) {
+            writeServiceFile();
+            return false;
+        }
+        TypeElement describe = elements.getTypeElement(DESCRIBE);
+        if(describe == null)
+            return false;
+
+        Set<TypeElement> commandClasses = new LinkedHashSet<>();
+        for(Element element : roundEnv.getElementsAnnotatedWith(describe))
+            commandClasses.add((TypeElement) element.getEnclosingElement());
+        for(TypeElement commandClass : commandClasses)
+            generate(commandClass);
+        return true;
+    }
+
+    private void generate(TypeElement commandClass) {
+        if(!checkCommandClass(commandClass))
+            return;
+        List<Member> members = collectMembers(commandClass);
+        if(members == null)
+            return;
+
+        String packageName = elements.getPackageOf(commandClass).getQualifiedName().toString();
+        String simpleName = describerSimpleName(commandClass);
+        String commandType = commandClass.getQualifiedName().toString();
+        boolean isGeneric = !commandClass.getTypeParameters().isEmpty();
+
+        StringBuilder source = new StringBuilder();
+        if(!packageName.isEmpty())
+            source.append("package ").append(packageName).append(";\n\n");
+        source.append("import ").append(PACKAGE).append(".CommandDescriptor;\n");
+        source.append("import ").append(PACKAGE).append(".CommandDescriptorFactory;\n");
+        source.append("import ").append(GENERATED_DESCRIBER).append(";\n\n");
+        source.append("@javax.annotation.processing.Generated(\"").append(getClass().getName()).append("\")\n");
+        if(isGeneric)
+            source.append("@SuppressWarnings(\"rawtypes\")\n");
+        source.append("public final class ").append(simpleName).append(" implements GeneratedDescriber<")
+                .append(commandType).append("> {\n\n");
+        source.append("    @Override\n");
+        source.append("    public Class<").append(commandType).append("> getCommandClass() {\n");
+        source.append("        return ").append(commandType).append(".class;\n");
+        source.append("    }\n\n");
+        source.append("    @Override\n");
+        source.append("    public void describe(CommandDescriptor descriptor, ").append(commandType)
+                .append(" command, boolean isRunning) throws Exception {\n");
+        source.append("        CommandDescriptorFactory.describeAsSuperclass(").append(commandType)
+                .append(".class, descriptor, command, isRunning);\n");
+        for(Member member : members) {
+            source.append("        descriptor.parameters.").append(putMethod(member.element)).append("(\"")
+                    .append(escape(member.parameter)).append("\", command.").append(member.element.getSimpleName());
+            if(member.element.getKind() == ElementKind.METHOD)
+                source.append("()");
+            source.append(");\n");
+        }
+        source.append("    }\n\n");
+        source.append("}\n");
+
+        String qualifiedName = packageName.isEmpty() ? simpleName : packageName + "." + simpleName;
+        try {
+            JavaFileObject file = filer.createSourceFile(qualifiedName, commandClass);
+            try(Writer writer = file.openWriter()) {
+                writer.write(source.toString());
+            }
+        } catch(IOException e) {
+            messager.printMessage(Diagnostic.Kind.ERROR, "Could not write " + qualifiedName + ": " + e, commandClass);
+            return;
+        }
+        generated.put(qualifiedName, commandClass);
+    }
+
+    private boolean checkCommandClass(TypeElement commandClass) {
+        if(commandClass.getKind() != ElementKind.CLASS) {
+            error(commandClass, "@Describe can only be used in command classes");
+            return false;
+        }
+        TypeElement command = elements.getTypeElement(COMMAND);
+        if(command == null || !types.isAssignable(types.erasure(commandClass.asType()),
+                types.erasure(command.asType()))) {
+            error(commandClass, "@Describe can only be used in classes that implement " + COMMAND);
+            return false;
+        }
+        TypeElement describable = elements.getTypeElement(DESCRIBABLE);
+        if(describable != null && types.isAssignable(types.erasure(commandClass.asType()),
+                types.erasure(describable.asType()))) {
+            error(commandClass, "@Describe cannot be used in a Describable command, since Describable takes "
+                    + "precedence; add the parameters in describe() instead");
+            return false;
+        }
+        for(Element element = commandClass; element instanceof TypeElement; element = element.getEnclosingElement()) {
+            TypeElement type = (TypeElement) element;
+            if(type.getModifiers().contains(Modifier.PRIVATE)) {
+                error(commandClass, "@Describe cannot be used in private classes");
+                return false;
+            }
+            if(type.getNestingKind() == NestingKind.LOCAL || type.getNestingKind() == NestingKind.ANONYMOUS
+                    || (type.getNestingKind() == NestingKind.MEMBER && !type.getModifiers().contains(Modifier.STATIC))) {
+                error(commandClass, "@Describe can only be used in top-level or static nested classes");
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the members of the class marked with @Describe, or null if any are invalid. Members of superclasses are
+     *         described by the superclass's own generated describer, which the generated code calls first.
+     */
+    private List<Member> collectMembers(TypeElement commandClass) {
+        Map<String, Member> members = new LinkedHashMap<>();
+        boolean isValid = true;
+        for(Element element : commandClass.getEnclosedElements()) {
+            AnnotationMirror annotation = describeAnnotation(element);
+            if(annotation == null)
+                continue;
+            if(!checkMember(element)) {
+                isValid = false;
+                continue;
+            }
+            String parameter = parameterName(element, annotation);
+            if(members.containsKey(parameter)) {
+                error(element, "Parameter \"" + parameter + "\" is already described by "
+                        + members.get(parameter).element + "; give one of them a different name");
+                isValid = false;
+                continue;
+            }
+            members.put(parameter, new Member(element, parameter));
+        }
+        return isValid ? new ArrayList<>(members.values()) : null;
+    }
+
+    private boolean checkMember(Element element) {
+        Set<Modifier> modifiers = element.getModifiers();
+        if(modifiers.contains(Modifier.STATIC)) {
+            error(element, "@Describe cannot be used on static members");
+            return false;
+        }
+        if(modifiers.contains(Modifier.PRIVATE)) {
+            if(element.getKind() == ElementKind.FIELD)
+                error(element, "The generated describer cannot read private field " + element.getSimpleName()
+                        + "; make it package-private or annotate a non-private getter instead");
+            else
+                error(element, "The generated describer cannot call private method " + element.getSimpleName()
+                        + "; make it package-private");
+            return false;
+        }
+        if(element.getKind() == ElementKind.METHOD) {
+            ExecutableElement method = (ExecutableElement) element;
+            if(!method.getParameters().isEmpty() || !method.getTypeParameters().isEmpty()) {
+                error(element, "@Describe methods must not take parameters");
+                return false;
+            }
+            if(method.getReturnType().getKind() == TypeKind.VOID) {
+                error(element, "@Describe methods must return a value");
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Primitives go into the unboxed parameter slots
+    private String putMethod(Element member) {
+        TypeMirror type = member.getKind() == ElementKind.METHOD ? ((ExecutableElement) member).getReturnType()
+                : member.asType();
+        switch(type.getKind()) {
+            case DOUBLE:
+            case FLOAT:
+                return "putDouble";
+            case LONG:
+            case INT:
+            case SHORT:
+            case BYTE:
+                return "putLong";
+            case BOOLEAN:
+                return "putBoolean";
+            default:
+                TypeElement string = elements.getTypeElement("java.lang.String");
+                return types.isSameType(type, string.asType()) ? "putString" : "put";
+        }
+    }
+
+    private AnnotationMirror describeAnnotation(Element element) {
+        for(AnnotationMirror annotation : element.getAnnotationMirrors()) {
+            TypeElement type = (TypeElement) annotation.getAnnotationType().asElement();
+            if(type.getQualifiedName().contentEquals(DESCRIBE))
+                return annotation;
+        }
+        return null;
+    }
+
+    private static String parameterName(Element element, AnnotationMirror annotation) {
+        for(Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : annotation.getElementValues()
+                .entrySet()) {
+            if(entry.getKey().getSimpleName().contentEquals("value")) {
+                String value = (String) entry.getValue().getValue();
+                if(!value.isEmpty())
+                    return value;
+            }
+        }
+        String name = element.getSimpleName().toString();
+        if(element.getKind() == ElementKind.METHOD) {
+            for(String prefix : new String[] { "get", "is" }) {
+                if(name.length() > prefix.length() && name.startsWith(prefix)
+                        && Character.isUpperCase(name.charAt(prefix.length())))
+                    return Character.toLowerCase(name.charAt(prefix.length())) + name.substring(prefix.length() + 1);
+            }
+        }
+        return name;
+    }
+
+    // e.g. Outer_Inner_Describer for Outer.Inner
+    private String describerSimpleName(TypeElement commandClass) {
+        String packageName = elements.getPackageOf(commandClass).getQualifiedName().toString();
+        String qualifiedName = commandClass.getQualifiedName().toString();
+        String nestedName = packageName.isEmpty() ? qualifiedName : qualifiedName.substring(packageName.length() + 1);
+        return nestedName.replace('.', '_') + SUFFIX;
+    }
+
+    private void writeServiceFile() {
+        if(generated.isEmpty())
+            return;
+        String resource = "META-INF/services/" + GENERATED_DESCRIBER;
+        try {
+            FileObject file = filer.createResource(StandardLocation.CLASS_OUTPUT, "", resource,
+                    generated.values().toArray(new Element[0]));
+            try(Writer writer = file.openWriter()) {
+                for(String describer : generated.keySet())
+                    writer.write(describer + "\n");
+            }
+        } catch(IOException e) {
+            messager.printMessage(Diagnostic.Kind.ERROR, "Could not write " + resource + ": " + e);
+        }
+    }
+
+    private static String escape(String string) {
+        return string.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    private void error(Element element, String message) {
+        messager.printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+
+}
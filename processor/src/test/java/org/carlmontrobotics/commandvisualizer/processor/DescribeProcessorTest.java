@@ -0,0 +1,185 @@
+package org.carlmontrobotics.commandvisualizer.processor;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class DescribeProcessorTest {
+
+    // Just enough of the library and WPILib for generated describers to compile against
+    private static final String[][] LIBRARY = {
+            { "edu/wpi/first/wpilibj2/command/Command", "package edu.wpi.first.wpilibj2.command;\n"
+                    + "public interface Command {}\n" },
+            { "org/carlmontrobotics/commandvisualizer/Describe", "package org.carlmontrobotics.commandvisualizer;\n"
+                    + "public @interface Describe { String value() default \"\"; }\n" },
+            { "org/carlmontrobotics/commandvisualizer/CommandParameters",
+                    "package org.carlmontrobotics.commandvisualizer;\n"
+                            + "public class CommandParameters {\n"
+                            + "    public void putDouble(String key, double value) {}\n"
+                            + "    public void putLong(String key, long value) {}\n"
+                            + "    public void putBoolean(String key, boolean value) {}\n"
+                            + "    public void putString(String key, String value) {}\n"
+                            + "    public Object put(String key, Object value) { return null; }\n"
+                            + "}\n" },
+            { "org/carlmontrobotics/commandvisualizer/CommandDescriptor",
+                    "package org.carlmontrobotics.commandvisualizer;\n"
+                            + "public class CommandDescriptor {\n"
+                            + "    public final CommandParameters parameters = new CommandParameters();\n"
+                            + "}\n" },
+            { "org/carlmontrobotics/commandvisualizer/CommandDescriptorFactory",
+                    "package org.carlmontrobotics.commandvisualizer;\n"
+                            + "import edu.wpi.first.wpilibj2.command.Command;\n"
+                            + "public class CommandDescriptorFactory {\n"
+                            + "    public static void describeAsSuperclass(Class<? extends Command> clazz,\n"
+                            + "            CommandDescriptor descriptor, Command command, boolean isRunning) {}\n"
+                            + "}\n" },
+            { "org/carlmontrobotics/commandvisualizer/GeneratedDescriber",
+                    "package org.carlmontrobotics.commandvisualizer;\n"
+                            + "import edu.wpi.first.wpilibj2.command.Command;\n"
+                            + "public interface GeneratedDescriber<T extends Command> {\n"
+                            + "    Class<T> getCommandClass();\n"
+                            + "    void describe(CommandDescriptor descriptor, T command, boolean isRunning)\n"
+                            + "            throws Exception;\n"
+                            + "}\n" } };
+
+    @TempDir
+    Path directory;
+
+    private DiagnosticCollector<JavaFileObject> diagnostics;
+
+    private static JavaFileObject source(String path, String code) {
+        return new SimpleJavaFileObject(URI.create("string:///" + path + ".java"), JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return code;
+            }
+        };
+    }
+
+    // Compiles the sources with the library stand-ins and the processor
+    private boolean compile(String path, String code) throws IOException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        diagnostics = new DiagnosticCollector<>();
+        List<JavaFileObject> sources = new ArrayList<>();
+        for(String[] library : LIBRARY)
+            sources.add(source(library[0], library[1]));
+        sources.add(source(path, code));
+
+        try(StandardJavaFileManager files = compiler.getStandardFileManager(diagnostics, null,
+                StandardCharsets.UTF_8)) {
+            Files.createDirectories(directory.resolve("classes"));
+            Files.createDirectories(directory.resolve("generated"));
+            files.setLocation(StandardLocation.CLASS_OUTPUT, List.of(directory.resolve("classes").toFile()));
+            files.setLocation(StandardLocation.SOURCE_OUTPUT, List.of(directory.resolve("generated").toFile()));
+            JavaCompiler.CompilationTask task = compiler.getTask(null, files, diagnostics, null, null, sources);
+            task.setProcessors(List.of(new DescribeProcessor()));
+            return task.call();
+        }
+    }
+
+    private String generated(String path) throws IOException {
+        return Files.readString(directory.resolve("generated").resolve(path));
+    }
+
+    private List<String> errors() {
+        return diagnostics.getDiagnostics().stream()
+                .filter(diagnostic -> diagnostic.getKind() == Diagnostic.Kind.ERROR)
+                .map(diagnostic -> diagnostic.getLineNumber() + ": " + diagnostic.getMessage(null))
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    public void generatesDescribersAndServiceFile() throws IOException {
+        assertTrue(compile("frc/robot/Arm", "package frc.robot;\n"
+                + "import edu.wpi.first.wpilibj2.command.Command;\n"
+                + "import org.carlmontrobotics.commandvisualizer.Describe;\n"
+                + "public class Arm implements Command {\n"
+                + "    @Describe double angle;\n"
+                + "    @Describe boolean isAtTarget() { return true; }\n"
+                + "    @Describe(\"target\") String getTargetName() { return \"Up\"; }\n"
+                + "    @Describe Object getPose() { return null; }\n"
+                + "    public static class Inner implements Command {\n"
+                + "        @Describe int count;\n"
+                + "    }\n"
+                + "}\n"), errors().toString());
+
+        String arm = generated("frc/robot/Arm_Describer.java");
+        assertTrue(arm.contains("public final class Arm_Describer implements GeneratedDescriber<frc.robot.Arm>"),
+                arm);
+        assertTrue(arm.contains("CommandDescriptorFactory.describeAsSuperclass(frc.robot.Arm.class, descriptor, "
+                + "command, isRunning);"), arm);
+        assertTrue(arm.contains("descriptor.parameters.putDouble(\"angle\", command.angle);"), arm);
+        assertTrue(arm.contains("descriptor.parameters.putBoolean(\"atTarget\", command.isAtTarget());"), arm);
+        assertTrue(arm.contains("descriptor.parameters.putString(\"target\", command.getTargetName());"), arm);
+        assertTrue(arm.contains("descriptor.parameters.put(\"pose\", command.getPose());"), arm);
+
+        String inner = generated("frc/robot/Arm_Inner_Describer.java");
+        assertTrue(inner.contains("public final class Arm_Inner_Describer implements "
+                + "GeneratedDescriber<frc.robot.Arm.Inner>"), inner);
+        assertTrue(inner.contains("descriptor.parameters.putLong(\"count\", command.count);"), inner);
+        assertTrue(Files.exists(directory.resolve("classes/frc/robot/Arm_Inner_Describer.class")));
+
+        Path services = directory.resolve("classes/META-INF/services");
+        assertEquals("frc.robot.Arm_Describer\nfrc.robot.Arm_Inner_Describer\n",
+                Files.readString(services.resolve("org.carlmontrobotics.commandvisualizer.GeneratedDescriber")));
+    }
+
+    @Test
+    public void reportsPrivateMembers() throws IOException {
+        assertFalse(compile("frc/robot/Arm", "package frc.robot;\n"
+                + "import edu.wpi.first.wpilibj2.command.Command;\n"
+                + "import org.carlmontrobotics.commandvisualizer.Describe;\n"
+                + "public class Arm implements Command {\n"
+                + "    @Describe private double angle;\n"
+                + "    @Describe private double getSpeed() { return 0; }\n"
+                + "}\n"));
+        assertEquals(List.of(
+                "5: The generated describer cannot read private field angle; make it package-private or annotate a "
+                        + "non-private getter instead",
+                "6: The generated describer cannot call private method getSpeed; make it package-private"),
+                errors());
+        assertFalse(Files.exists(directory.resolve("generated/frc/robot/Arm_Describer.java")));
+    }
+
+    @Test
+    public void reportsClassesThatAreNotCommands() throws IOException {
+        assertFalse(compile("frc/robot/Arm", "package frc.robot;\n"
+                + "import org.carlmontrobotics.commandvisualizer.Describe;\n"
+                + "public class Arm {\n"
+                + "    @Describe double angle;\n"
+                + "}\n"));
+        assertEquals(List.of("3: @Describe can only be used in classes that implement "
+                + "edu.wpi.first.wpilibj2.command.Command"), errors());
+    }
+
+    @Test
+    public void reportsMethodsWithParameters() throws IOException {
+        assertFalse(compile("frc/robot/Arm", "package frc.robot;\n"
+                + "import edu.wpi.first.wpilibj2.command.Command;\n"
+                + "import org.carlmontrobotics.commandvisualizer.Describe;\n"
+                + "public class Arm implements Command {\n"
+                + "    @Describe double angleOf(int joint) { return 0; }\n"
+                + "}\n"));
+        assertEquals(List.of("5: @Describe methods must not take parameters"), errors());
+    }
+
+}
@@ -0,0 +1,103 @@
+package org.carlmontrobotics.commandvisualizer;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.ParallelCommandGroup;
+import edu.wpi.first.wpilibj2.command.SelectCommand;
+import edu.wpi.first.wpilibj2.command.SequentialCommandGroup;
+import edu.wpi.first.wpilibj2.command.WaitCommand;
+import edu.wpi.first.wpilibj2.command.WaitUntilCommand;
+
+// Builds synthetic command graphs for the benchmarks
+public class CommandGraphs {
+
+    public enum Shape {
+        // A chain of sequential groups, each wrapping the next
+        DEEP_SEQUENTIAL,
+        // One parallel group with many children
+        WIDE_PARALLEL,
+        // A select command choosing between many branches
+        SELECT,
+        // Several small autos mixing all of the above
+        MIXED
+    }
+
+    private static boolean initialized = false;
+
+    /**
+     * Initializes the simulated HAL so that commands can be created without robot hardware.
+     *
+     * @throws IllegalStateException if the HAL cannot be loaded or initialized, so that a benchmark fails instead
+     *         of measuring nothing
+     */
+    public static synchronized void initialize() {
+        if (initialized)
+            return;
+        boolean halInitialized;
+        try {
+            halInitialized = HAL.initialize(500, 0);
+        } catch (UnsatisfiedLinkError e) {
+            throw new IllegalStateException("Unable to load the desktop HAL from java.library.path="
+                    + System.getProperty("java.library.path") + ", run the benchmarks with ./gradlew jmh", e);
+        }
+        if (!halInitialized)
+            throw new IllegalStateException("Unable to initialize the simulated HAL");
+        WPILibCommandDescribers.registerAll();
+        initialized = true;
+    }
+
+    /**
+     * @return the root commands of a graph with roughly {@code size} commands in total
+     */
+    public static Command[] build(Shape shape, int size) {
+        switch (shape) {
+            case DEEP_SEQUENTIAL:
+                return new Command[] { deepSequential(size) };
+            case WIDE_PARALLEL:
+                return new Command[] { wideParallel(size) };
+            case SELECT:
+                return new Command[] { select(size) };
+            case MIXED:
+                int autos = Math.max(1, size / 10);
+                Command[] roots = new Command[autos];
+                for (int i = 0; i < autos; i++) {
+                    roots[i] = new SequentialCommandGroup(
+                            new WaitCommand(0.5),
+                            wideParallel(3),
+                            select(3),
+                            new WaitUntilCommand(() -> true));
+                }
+                return roots;
+            default:
+                throw new IllegalArgumentException(shape.toString());
+        }
+    }
+
+    private static Command deepSequential(int depth) {
+        Command command = new WaitCommand(1);
+        for (int i = 1; i < depth; i++) {
+            command = new SequentialCommandGroup(new WaitCommand(1), command);
+        }
+        return command;
+    }
+
+    private static Command wideParallel(int width) {
+        Command[] commands = new Command[width];
+        for (int i = 0; i < width; i++) {
+            commands[i] = new WaitCommand(i);
+        }
+        return new ParallelCommandGroup(commands);
+    }
+
+    private static Command select(int branches) {
+        Map<Object, Command> commands = new HashMap<>();
+        for (int i = 0; i < branches; i++) {
+            commands.put(i, new WaitCommand(i));
+        }
+        return new SelectCommand(commands, () -> 0);
+    }
+
+}
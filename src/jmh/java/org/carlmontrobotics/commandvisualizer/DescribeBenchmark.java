@@ -0,0 +1,83 @@
+package org.carlmontrobotics.commandvisualizer;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.wpi.first.wpilibj2.command.Command;
+
+/**
+ * Measures one tick of the describe/serialize hot path for synthetic command graphs. Run with the gc profiler
+ * (enabled in build.gradle) to get the allocation rate per tick.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DescribeBenchmark {
+
+    @Param({ "DEEP_SEQUENTIAL", "WIDE_PARALLEL", "SELECT", "MIXED" })
+    public CommandGraphs.Shape shape;
+
+    @Param({ "10", "100", "1000" })
+    public int size;
+
+    private Command[] roots;
+    private CommandDescriptor[] descriptors;
+    private final CommandDescriptorWriter writer = new CommandDescriptorWriter();
+    private final CommandDescriptorBinaryWriter binaryWriter = new CommandDescriptorBinaryWriter();
+    private final CommandJsonCache jsonCache = new CommandJsonCache(writer);
+    private final CommandDeltaTracker deltaTracker = new CommandDeltaTracker();
+
+    @Setup
+    public void setup() {
+        CommandGraphs.initialize();
+        roots = CommandGraphs.build(shape, size);
+        descriptors = describe();
+    }
+
+    @Benchmark
+    public CommandDescriptor[] describe() {
+        CommandDescriptorFactory.nextGeneration();
+        CommandDescriptor[] result = new CommandDescriptor[roots.length];
+        for (int i = 0; i < roots.length; i++) {
+            result[i] = CommandDescriptorFactory.fromCommand(roots[i], true);
+        }
+        return result;
+    }
+
+    @Benchmark
+    public String serializeJson() throws Exception {
+        return writer.write(descriptors).toString();
+    }
+
+    @Benchmark
+    public byte[] serializeBinary() {
+        return binaryWriter.write(descriptors);
+    }
+
+    @Benchmark
+    public CharSequence serializeUnchangedDelta() throws Exception {
+        jsonCache.nextPublish();
+        return deltaTracker.nextDelta(Arrays.asList(descriptors), false, jsonCache, writer);
+    }
+
+    @Benchmark
+    public String describeAndSerializeJson() throws Exception {
+        return writer.write(describe()).toString();
+    }
+
+}
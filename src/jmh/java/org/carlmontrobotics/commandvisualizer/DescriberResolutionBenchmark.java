@@ -0,0 +1,102 @@
+package org.carlmontrobotics.commandvisualizer;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.WaitCommand;
+
+/**
+ * Describes a command whose class is {@code depth} subclasses below the class its describer is registered for.
+ * With describers resolved once per class, the cost should not grow with the depth.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DescriberResolutionBenchmark {
+
+    @Param({ "0", "1", "4", "8", "16" })
+    public int depth;
+
+    private Command command;
+
+    @Setup
+    public void setup() {
+        CommandGraphs.initialize();
+        command = createAtDepth(depth);
+    }
+
+    @Benchmark
+    public CommandDescriptor fromCommand() {
+        CommandDescriptorFactory.nextGeneration();
+        return CommandDescriptorFactory.fromCommand(command, true);
+    }
+
+    private static Command createAtDepth(int depth) {
+        switch (depth) {
+            case 0:
+                return new WaitCommand(1);
+            case 1:
+                return new Depth1();
+            case 4:
+                return new Depth4();
+            case 8:
+                return new Depth8();
+            case 16:
+                return new Depth16();
+            default:
+                throw new IllegalArgumentException("No command class at depth " + depth);
+        }
+    }
+
+    public static class Depth1 extends WaitCommand {
+        public Depth1() {
+            super(1);
+        }
+    }
+
+    public static class Depth2 extends Depth1 {}
+
+    public static class Depth3 extends Depth2 {}
+
+    public static class Depth4 extends Depth3 {}
+
+    public static class Depth5 extends Depth4 {}
+
+    public static class Depth6 extends Depth5 {}
+
+    public static class Depth7 extends Depth6 {}
+
+    public static class Depth8 extends Depth7 {}
+
+    public static class Depth9 extends Depth8 {}
+
+    public static class Depth10 extends Depth9 {}
+
+    public static class Depth11 extends Depth10 {}
+
+    public static class Depth12 extends Depth11 {}
+
+    public static class Depth13 extends Depth12 {}
+
+    public static class Depth14 extends Depth13 {}
+
+    public static class Depth15 extends Depth14 {}
+
+    public static class Depth16 extends Depth15 {}
+
+}
@@ -0,0 +1,74 @@
+package org.carlmontrobotics.commandvisualizer;
+
+import java.lang.invoke.VarHandle;
+import java.lang.reflect.Field;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the ways a describer can read private fields: reflection, a {@link VarHandle} in an instance field read
+ * with erased types (how {@link FieldAccessor} used to work), and a {@code static final} VarHandle read with the
+ * exact types, which is how {@link WPILibCommandDescribers} reads them. Each benchmark reads a double and an object
+ * field, like the wait and sequential group describers do.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FieldAccessBenchmark {
+
+    private static final VarHandle DURATION = FieldAccessor.find(Target.class, "m_duration");
+    private static final VarHandle COMMANDS = FieldAccessor.find(Target.class, "m_commands");
+
+    private Target target;
+    private Field durationField, commandsField;
+    private VarHandle duration, commands;
+
+    @Setup
+    public void setup() throws ReflectiveOperationException {
+        target = new Target();
+        durationField = Target.class.getDeclaredField("m_duration");
+        durationField.setAccessible(true);
+        commandsField = Target.class.getDeclaredField("m_commands");
+        commandsField.setAccessible(true);
+        duration = DURATION;
+        commands = COMMANDS;
+    }
+
+    @Benchmark
+    public double reflection() throws IllegalAccessException {
+        return durationField.getDouble(target) + ((List<?>) commandsField.get(target)).size();
+    }
+
+    @Benchmark
+    public double instanceVarHandle() {
+        Object receiver = target;
+        return (double) duration.get(receiver) + ((List<?>) commands.get(receiver)).size();
+    }
+
+    @Benchmark
+    public double staticExactVarHandle() {
+        Target receiver = target;
+        return (double) DURATION.get(receiver) + ((List<?>) COMMANDS.get(receiver)).size();
+    }
+
+    // Declares fields like the WPILib commands do, without needing the HAL
+    private static class Target {
+        private final double m_duration = Math.random();
+        private final List<Object> m_commands = List.of(new Object(), new Object());
+    }
+
+}
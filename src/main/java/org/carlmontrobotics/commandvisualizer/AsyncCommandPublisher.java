@@ -0,0 +1,73 @@
+package org.carlmontrobotics.commandvisualizer;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Hands descriptor snapshots from the robot loop to a background publishing thread through a single slot. Offering
+ * a snapshot replaces any snapshot that has not been picked up yet, so a slow publisher only ever sees the latest
+ * state and the robot loop never blocks.
+ * <p>
+ * Three {@link CommandSnapshot}s rotate between the robot loop, which fills one, the pending slot and the publisher
+ * thread, which publishes one. Each thread only swaps its own snapshot with the pending one, so neither ever reads a
+ * snapshot that the other is using, and snapshots are reused rather than copied from scratch every tick.
+ */
+class AsyncCommandPublisher {
+
+    private final AtomicReference<CommandSnapshot> pending = new AtomicReference<>(new CommandSnapshot());
+    // Only used by the robot loop thread
+    private CommandSnapshot filling = new CommandSnapshot();
+    // Only used by the publisher thread
+    private CommandSnapshot publishing = new CommandSnapshot();
+    private final Consumer<CommandDescriptor[]> publisher;
+    private final Thread thread;
+    private volatile boolean running = true;
+    private volatile long droppedSnapshots = 0;
+
+    AsyncCommandPublisher(Consumer<CommandDescriptor[]> publisher) {
+        this.publisher = publisher;
+        thread = new Thread(this::run, "CommandVisualizer Publisher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Copies the state of the descriptors and hands it to the publisher thread. Called from the robot loop thread.
+     */
+    void offer(CommandDescriptor[] descriptors) {
+        filling.copyFrom(descriptors);
+        filling.fresh = true;
+        filling = pending.getAndSet(filling);
+        if (filling.fresh)
+            droppedSnapshots++; // Only the robot loop thread writes this
+        LockSupport.unpark(thread);
+    }
+
+    long getDroppedSnapshots() {
+        return droppedSnapshots;
+    }
+
+    void stop() {
+        running = false;
+        LockSupport.unpark(thread);
+    }
+
+    private void run() {
+        while (running) {
+            // If nothing new was offered, this swaps one published snapshot for another
+            publishing = pending.getAndSet(publishing);
+            if (!publishing.fresh) {
+                LockSupport.park(this);
+                continue;
+            }
+            publishing.fresh = false;
+            try {
+                publisher.accept(publishing.getDescriptors());
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,67 @@
+package org.carlmontrobotics.commandvisualizer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Remembers what was last published for each top-level descriptor id and encodes the difference
+class CommandDeltaTracker {
+
+    // In publishing order, so that keyframes list the descriptors in the same order as the snapshots
+    private Map<Integer, String> published = new LinkedHashMap<>();
+    private Map<Integer, String> current = new LinkedHashMap<>();
+    private final ArrayList<String> changed = new ArrayList<>();
+    private final ArrayList<String> keyframe = new ArrayList<>();
+    private final ArrayList<Integer> removed = new ArrayList<>();
+    private long sequence = 0;
+
+    /**
+     * @return the JSON for the next {@link CommandDescriptorDelta}, or null if nothing changed and no keyframe was
+     *         requested. The result is only valid until the writer is used again.
+     */
+    CharSequence nextDelta(List<CommandDescriptor> descriptors, boolean keyframe, CommandJsonCache cache,
+            CommandDescriptorWriter writer) throws IOException {
+        current.clear();
+        changed.clear();
+        removed.clear();
+
+        for(int i = 0; i < descriptors.size(); i++) {
+            CommandDescriptor descriptor = descriptors.get(i);
+            String json = cache.get(descriptor);
+            // The cache returns the same string for unchanged descriptors, so this is usually a reference comparison
+            boolean isChanged = !json.equals(published.get(descriptor.id));
+            current.put(descriptor.id, json);
+            if(keyframe || isChanged)
+                changed.add(json);
+        }
+        if(!keyframe) {
+            for(Integer id : published.keySet()) {
+                if(!current.containsKey(id))
+                    removed.add(id);
+            }
+            if(changed.isEmpty() && removed.isEmpty())
+                return null;
+        }
+
+        Map<Integer, String> previous = published;
+        published = current;
+        current = previous;
+        sequence++;
+
+        return writer.writeDelta(sequence, keyframe, changed, removed);
+    }
+
+    /**
+     * @return the JSON for a keyframe of what was last published, with the same sequence number so that the deltas
+     *         that follow apply to it. The result is only valid until the writer is used again.
+     */
+    CharSequence writeKeyframe(CommandDescriptorWriter writer) throws IOException {
+        keyframe.clear();
+        keyframe.addAll(published.values());
+        return writer.writeDelta(sequence, true, keyframe, Collections.emptyList());
+    }
+
+}
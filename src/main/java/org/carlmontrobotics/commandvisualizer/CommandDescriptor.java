@@ -1,29 +1,92 @@
 package org.carlmontrobotics.commandvisualizer;
 
-import java.util.HashMap;
-import java.util.Map;
-
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 
 import edu.wpi.first.wpilibj2.command.Command.InterruptionBehavior;
 
 public class CommandDescriptor {
 
+    public static final CommandDescriptor[] NO_SUB_COMMANDS = new CommandDescriptor[0];
+
+    // ObjectMappers are expensive to create but thread safe once configured, so share one
+    static final ObjectMapper mapper = new ObjectMapper();
+    private static final ObjectReader reader = mapper.readerFor(CommandDescriptor.class);
+
+    // Structure: name, clazz, runsWhenDisabled, interruptionBehavior and requirements are captured in a
+    // CommandStructure and only refreshed when the command stops matching it, e.g. after it is renamed.
+    // State: the other fields are refreshed every tick. The describer changes when describers are registered, and a
+    // command can be composed after it was first described.
     public int id;
     public String name, clazz, describer;
-    public boolean isRunning, runsWhenDisabled, isComposed;
-    public Map<String, Object> parameters = new HashMap<>();
+    public boolean runsWhenDisabled;
     public InterruptionBehavior interruptionBehavior = InterruptionBehavior.kCancelSelf;
-    public CommandDescriptor[] subCommands = new CommandDescriptor[0];
     public String[] requirements = new String[0];
 
+    public boolean isRunning, isComposed;
+    public CommandParameters parameters = new CommandParameters();
+    public CommandDescriptor[] subCommands = NO_SUB_COMMANDS;
+
+    // The structure the structural fields were last filled from, null for descriptors that were not described
+    CommandStructure structure;
+    long generation = -1;
+    private CommandDescriptor[] subCommandBuffer = NO_SUB_COMMANDS;
+
+    /**
+     * Sets {@link #subCommands} to an array of the given length, reusing the array from previous ticks when the
+     * length has not changed.
+     */
+    public CommandDescriptor[] subCommandSlots(int count) {
+        if(subCommandBuffer.length != count)
+            subCommandBuffer = new CommandDescriptor[count];
+        return subCommands = subCommandBuffer;
+    }
+
+    /**
+     * Copies this descriptor and its sub commands so that the copy is unaffected by later ticks.
+     */
+    public CommandDescriptor copy() {
+        CommandDescriptor copy = new CommandDescriptor();
+        copy.id = id;
+        copy.name = name;
+        copy.clazz = clazz;
+        copy.describer = describer;
+        copy.runsWhenDisabled = runsWhenDisabled;
+        copy.isComposed = isComposed;
+        copy.interruptionBehavior = interruptionBehavior;
+        copy.requirements = requirements;
+        copy.isRunning = isRunning;
+        copy.structure = structure;
+        copy.parameters = parameters.copy();
+        if(subCommands.length > 0) {
+            copy.subCommands = new CommandDescriptor[subCommands.length];
+            for(int i = 0; i < subCommands.length; i++)
+                copy.subCommands[i] = subCommands[i] == null ? null : subCommands[i].copy();
+        }
+        return copy;
+    }
+
     public String toJson() throws JsonProcessingException {
-        return new ObjectMapper().writeValueAsString(this);
+        return mapper.writeValueAsString(this);
     }
 
     public static CommandDescriptor fromJson(String json) throws JsonProcessingException {
-        return new ObjectMapper().readValue(json, CommandDescriptor.class);
+        return reader.readValue(json);
+    }
+
+    /**
+     * Decodes a payload published by a binary logger.
+     *
+     * @param strings the most recent string table, decoded with {@link #stringTableFromBinary(byte[])}
+     * @throws WrapperException if the payload is malformed or needs a newer string table
+     */
+    public static CommandDescriptor[] fromBinary(byte[] data, String[] strings) throws WrapperException {
+        return CommandDescriptorBinaryReader.readDescriptors(data, strings);
+    }
+
+    public static String[] stringTableFromBinary(byte[] data) throws WrapperException {
+        return CommandDescriptorBinaryReader.readStringTable(data);
     }
 
 }
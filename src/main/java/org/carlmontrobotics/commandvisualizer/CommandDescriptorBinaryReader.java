@@ -0,0 +1,176 @@
+package org.carlmontrobotics.commandvisualizer;
+
+import static org.carlmontrobotics.commandvisualizer.CommandDescriptorBinaryWriter.*;
+
+import java.nio.charset.StandardCharsets;
+
+import edu.wpi.first.wpilibj2.command.Command.InterruptionBehavior;
+
+// Decodes the format written by CommandDescriptorBinaryWriter
+class CommandDescriptorBinaryReader {
+
+    private final byte[] data;
+    private final String[] strings;
+    private int position = 0;
+    // How many strings of the table the payload refers to
+    private int stringCount = 0;
+
+    private CommandDescriptorBinaryReader(byte[] data, String[] strings) {
+        this.data = data;
+        this.strings = strings;
+    }
+
+    static String[] readStringTable(byte[] data) {
+        CommandDescriptorBinaryReader reader = new CommandDescriptorBinaryReader(data, null);
+        String[] strings = new String[reader.readCount()];
+        for(int i = 0; i < strings.length; i++)
+            strings[i] = reader.readInlineString();
+        return strings;
+    }
+
+    static CommandDescriptor[] readDescriptors(byte[] data, String[] strings) {
+        CommandDescriptorBinaryReader reader = new CommandDescriptorBinaryReader(data, strings);
+        if(reader.readByte() != MAGIC)
+            throw new WrapperException("Not a binary command descriptor payload");
+        int version = reader.readByte();
+        if(version != VERSION)
+            throw new WrapperException("Unsupported binary command descriptor version " + version);
+        int stringCount = reader.readVarintInt();
+        if(stringCount > strings.length)
+            throw new WrapperException("Payload needs " + stringCount + " strings but the table only has "
+                    + strings.length);
+        // The writer may have replaced its table since this one was published
+        if(reader.readInt() != CommandDescriptorBinaryWriter.hashStrings(strings, stringCount))
+            throw new WrapperException("Payload was encoded against a different string table");
+        reader.stringCount = stringCount;
+
+        CommandDescriptor[] descriptors = new CommandDescriptor[reader.readCount()];
+        for(int i = 0; i < descriptors.length; i++)
+            descriptors[i] = reader.readDescriptor();
+        return descriptors;
+    }
+
+    private CommandDescriptor readDescriptor() {
+        CommandDescriptor descriptor = new CommandDescriptor();
+        descriptor.id = readVarintInt();
+        descriptor.name = readStringIndex();
+        descriptor.clazz = readStringIndex();
+        descriptor.describer = readStringIndex();
+
+        int flags = readByte();
+        descriptor.isRunning = (flags & FLAG_RUNNING) != 0;
+        descriptor.runsWhenDisabled = (flags & FLAG_RUNS_WHEN_DISABLED) != 0;
+        descriptor.isComposed = (flags & FLAG_COMPOSED) != 0;
+        descriptor.interruptionBehavior = (flags & FLAG_CANCEL_INCOMING) != 0 ? InterruptionBehavior.kCancelIncoming
+                : InterruptionBehavior.kCancelSelf;
+
+        descriptor.requirements = new String[readCount()];
+        for(int i = 0; i < descriptor.requirements.length; i++)
+            descriptor.requirements[i] = readStringIndex();
+
+        int parameterCount = readCount();
+        for(int i = 0; i < parameterCount; i++) {
+            String key = readStringIndex();
+            if(key == null)
+                throw new WrapperException("Parameter without a key in binary command descriptor payload");
+            descriptor.parameters.put(key, readValue());
+        }
+
+        CommandDescriptor[] subCommands = new CommandDescriptor[readCount()];
+        for(int i = 0; i < subCommands.length; i++)
+            subCommands[i] = readByte() == 0 ? null : readDescriptor();
+        descriptor.subCommands = subCommands;
+        return descriptor;
+    }
+
+    private Object readValue() {
+        byte tag = (byte) readByte();
+        switch(tag) {
+            case TAG_NULL:
+                return null;
+            case TAG_DOUBLE:
+                return Double.longBitsToDouble(readLong());
+            case TAG_TRUE:
+                return true;
+            case TAG_FALSE:
+                return false;
+            case TAG_LONG:
+                long zigZag = readVarint();
+                return (zigZag >>> 1) ^ -(zigZag & 1);
+            case TAG_STRING_ARRAY:
+                String[] values = new String[readCount()];
+                for(int i = 0; i < values.length; i++)
+                    values[i] = readInlineString();
+                return values;
+            case TAG_STRING:
+                return readInlineString();
+            default:
+                throw new WrapperException("Unknown parameter tag " + tag);
+        }
+    }
+
+    private String readStringIndex() {
+        int index = readVarintInt();
+        if(index > stringCount)
+            throw new WrapperException("String index " + index + " is outside the table of " + stringCount);
+        return index == 0 ? null : strings[index - 1];
+    }
+
+    private String readInlineString() {
+        int length = readVarintInt();
+        if(length > data.length - position)
+            throw new WrapperException("Truncated binary command descriptor payload");
+        String string = new String(data, position, length, StandardCharsets.UTF_8);
+        position += length;
+        return string;
+    }
+
+    private long readVarint() {
+        long value = 0;
+        for(int shift = 0;; shift += 7) {
+            if(shift > 63)
+                throw new WrapperException("Malformed varint in binary command descriptor payload");
+            int b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if((b & 0x80) == 0)
+                return value;
+        }
+    }
+
+    private int readVarintInt() {
+        long value = readVarint();
+        if(value < 0 || value > Integer.MAX_VALUE)
+            throw new WrapperException("Malformed varint in binary command descriptor payload");
+        return (int) value;
+    }
+
+    // Reads the length of a list whose elements take at least a byte each, so that a corrupt length fails here
+    // instead of allocating a huge array
+    private int readCount() {
+        int count = readVarintInt();
+        if(count > data.length - position)
+            throw new WrapperException("Truncated binary command descriptor payload");
+        return count;
+    }
+
+    private int readInt() {
+        int value = 0;
+        for(int i = 0; i < 4; i++)
+            value |= readByte() << (8 * i);
+        return value;
+    }
+
+    private long readLong() {
+        long value = 0;
+        for(int i = 0; i < 8; i++)
+            value |= (long) readByte() << (8 * i);
+        return value;
+    }
+
+    private int readByte() {
+        if(position >= data.length)
+            throw new WrapperException("Truncated binary command descriptor payload");
+        return data[position++] & 0xFF;
+    }
+
+}
@@ -0,0 +1,297 @@
+package org.carlmontrobotics.commandvisualizer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import edu.wpi.first.wpilibj2.command.Command.InterruptionBehavior;
+
+/**
+ * Encodes descriptors into a compact binary format. Names, classes, describers, requirements and parameter keys
+ * are replaced by indices into a string table, which is published separately and only when it changes. The table
+ * is append-only until most of its strings are no longer used, e.g. after many commands were renamed or evicted,
+ * and then it is rebuilt from the strings in use. Integers are unsigned LEB128 varints. Instances are not thread
+ * safe.
+ *
+ * <pre>
+ * payload    := MAGIC VERSION varint(stringCount) int32(tableHash) varint(rootCount) descriptor*
+ * descriptor := varint(id) string(name) string(clazz) string(describer) byte(flags)
+ *               varint(requirementCount) string* varint(parameterCount) (string(key) value)*
+ *               varint(subCommandCount) (byte(present) descriptor?)*
+ * string     := varint(index + 1), 0 for null
+ * value      := byte(tag) tag-specific data
+ * strings    := varint(count) (varint(utf8Length) utf8)*
+ * </pre>
+ *
+ * {@code stringCount} is the size of the string table the payload was encoded against, and {@code tableHash} is
+ * {@link #hashStrings(String[], int)} of its strings, so a decoder can tell when it has not yet received a new
+ * enough table, including after the table was rebuilt. int32 is little-endian.
+ */
+class CommandDescriptorBinaryWriter {
+
+    static final byte MAGIC = 'C';
+    static final byte VERSION = 2;
+
+    static final int FLAG_RUNNING = 1, FLAG_RUNS_WHEN_DISABLED = 2, FLAG_COMPOSED = 4, FLAG_CANCEL_INCOMING = 8;
+
+    static final byte TAG_NULL = 0, TAG_DOUBLE = 1, TAG_TRUE = 2, TAG_FALSE = 3, TAG_STRING = 4,
+            TAG_STRING_ARRAY = 5, TAG_LONG = 6;
+
+    // The table is only rebuilt once it has at least this many strings, so that small tables are never rebuilt
+    static final int MIN_STRINGS_TO_PRUNE = 256;
+
+    private final Map<String, Integer> stringIndices = new HashMap<>();
+    private final ArrayList<String> strings = new ArrayList<>();
+    private int tableHash = 0;
+    private boolean stringsChanged = true;
+    // The last write that used each string, to count the strings that the current payload uses
+    private int[] lastUsed = new int[256];
+    private int writeCount = 0;
+    private int usedStrings;
+
+    private byte[] buffer = new byte[4096];
+    private int position;
+
+    public byte[] write(CommandDescriptor[] descriptors) {
+        position = 0;
+        // Intern everything first so the payload can state which table it needs
+        internAll(descriptors);
+        if(strings.size() >= MIN_STRINGS_TO_PRUNE && usedStrings * 2 < strings.size()) {
+            // Most of the table is unused, so rebuild it from the strings this payload uses
+            stringIndices.clear();
+            strings.clear();
+            tableHash = 0;
+            internAll(descriptors);
+        }
+
+        writeByte(MAGIC);
+        writeByte(VERSION);
+        writeVarint(strings.size());
+        writeInt(tableHash);
+        writeVarint(descriptors.length);
+        for(CommandDescriptor descriptor : descriptors)
+            writeDescriptor(descriptor);
+        return Arrays.copyOf(buffer, position);
+    }
+
+    /**
+     * @return whether strings have been added since the table was last encoded
+     */
+    public boolean haveStringsChanged() {
+        return stringsChanged;
+    }
+
+    public byte[] writeStringTable() {
+        position = 0;
+        writeVarint(strings.size());
+        for(String string : strings) {
+            byte[] utf8 = string.getBytes(StandardCharsets.UTF_8);
+            writeVarint(utf8.length);
+            writeBytes(utf8);
+        }
+        stringsChanged = false;
+        return Arrays.copyOf(buffer, position);
+    }
+
+    /**
+     * Hashes the first {@code count} strings of a table. The writer keeps the hash of its table up to date as strings
+     * are added, and readers compare it with the hash of the table they have.
+     */
+    static int hashStrings(String[] strings, int count) {
+        int hash = 0;
+        for(int i = 0; i < count; i++)
+            hash = 31 * hash + strings[i].hashCode();
+        return hash;
+    }
+
+    private void internAll(CommandDescriptor[] descriptors) {
+        writeCount++;
+        usedStrings = 0;
+        for(CommandDescriptor descriptor : descriptors)
+            internStrings(descriptor);
+    }
+
+    private void internStrings(CommandDescriptor descriptor) {
+        intern(descriptor.name);
+        intern(descriptor.clazz);
+        intern(descriptor.describer);
+        if(descriptor.requirements != null) {
+            for(String requirement : descriptor.requirements)
+                intern(requirement);
+        }
+        if(descriptor.parameters != null) {
+            for(int i = 0; i < descriptor.parameters.size(); i++)
+                intern(descriptor.parameters.getKey(i));
+        }
+        if(descriptor.subCommands != null) {
+            for(CommandDescriptor subCommand : descriptor.subCommands) {
+                if(subCommand != null)
+                    internStrings(subCommand);
+            }
+        }
+    }
+
+    private void intern(String string) {
+        if(string == null)
+            return;
+        Integer index = stringIndices.get(string);
+        if(index == null) {
+            index = strings.size();
+            stringIndices.put(string, index);
+            strings.add(string);
+            tableHash = 31 * tableHash + string.hashCode();
+            stringsChanged = true;
+            if(index == lastUsed.length)
+                lastUsed = Arrays.copyOf(lastUsed, index * 2);
+        }
+        if(lastUsed[index] != writeCount) {
+            lastUsed[index] = writeCount;
+            usedStrings++;
+        }
+    }
+
+    private void writeDescriptor(CommandDescriptor descriptor) {
+        writeVarint(descriptor.id);
+        writeStringIndex(descriptor.name);
+        writeStringIndex(descriptor.clazz);
+        writeStringIndex(descriptor.describer);
+
+        int flags = 0;
+        if(descriptor.isRunning)
+            flags |= FLAG_RUNNING;
+        if(descriptor.runsWhenDisabled)
+            flags |= FLAG_RUNS_WHEN_DISABLED;
+        if(descriptor.isComposed)
+            flags |= FLAG_COMPOSED;
+        if(descriptor.interruptionBehavior == InterruptionBehavior.kCancelIncoming)
+            flags |= FLAG_CANCEL_INCOMING;
+        writeByte(flags);
+
+        if(descriptor.requirements == null) {
+            writeVarint(0);
+        } else {
+            writeVarint(descriptor.requirements.length);
+            for(String requirement : descriptor.requirements)
+                writeStringIndex(requirement);
+        }
+
+        if(descriptor.parameters == null) {
+            writeVarint(0);
+        } else {
+            CommandParameters parameters = descriptor.parameters;
+            writeVarint(parameters.size());
+            for(int i = 0; i < parameters.size(); i++) {
+                writeStringIndex(parameters.getKey(i));
+                switch(parameters.getKind(i)) {
+                    case CommandParameters.DOUBLE:
+                        writeByte(TAG_DOUBLE);
+                        writeLong(Double.doubleToRawLongBits(parameters.getDouble(i)));
+                        break;
+                    case CommandParameters.LONG:
+                        writeByte(TAG_LONG);
+                        writeZigZag(parameters.getLong(i));
+                        break;
+                    case CommandParameters.BOOLEAN:
+                        writeByte(parameters.getBoolean(i) ? TAG_TRUE : TAG_FALSE);
+                        break;
+                    default:
+                        writeValue(parameters.getObject(i));
+                        break;
+                }
+            }
+        }
+
+        if(descriptor.subCommands == null) {
+            writeVarint(0);
+        } else {
+            writeVarint(descriptor.subCommands.length);
+            for(CommandDescriptor subCommand : descriptor.subCommands) {
+                writeByte(subCommand == null ? 0 : 1);
+                if(subCommand != null)
+                    writeDescriptor(subCommand);
+            }
+        }
+    }
+
+    private void writeValue(Object value) {
+        if(value == null) {
+            writeByte(TAG_NULL);
+        } else if(value instanceof Double || value instanceof Float) {
+            writeByte(TAG_DOUBLE);
+            writeLong(Double.doubleToRawLongBits(((Number) value).doubleValue()));
+        } else if(value instanceof Boolean) {
+            writeByte((Boolean) value ? TAG_TRUE : TAG_FALSE);
+        } else if(value instanceof Long || value instanceof Integer || value instanceof Short
+                || value instanceof Byte) {
+            writeByte(TAG_LONG);
+            writeZigZag(((Number) value).longValue());
+        } else if(value instanceof String[]) {
+            String[] values = (String[]) value;
+            writeByte(TAG_STRING_ARRAY);
+            writeVarint(values.length);
+            for(String string : values)
+                writeInlineString(string);
+        } else {
+            writeByte(TAG_STRING);
+            writeInlineString(value.toString());
+        }
+    }
+
+    private void writeStringIndex(String string) {
+        writeVarint(string == null ? 0 : stringIndices.get(string) + 1);
+    }
+
+    private void writeInlineString(String string) {
+        byte[] utf8 = (string == null ? "" : string).getBytes(StandardCharsets.UTF_8);
+        writeVarint(utf8.length);
+        writeBytes(utf8);
+    }
+
+    private void writeVarint(long value) {
+        ensureCapacity(10);
+        while((value & ~0x7FL) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    private void writeZigZag(long value) {
+        writeVarint((value << 1) ^ (value >> 63));
+    }
+
+    private void writeLong(long value) {
+        ensureCapacity(8);
+        for(int i = 0; i < 8; i++) {
+            buffer[position++] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
+    private void writeInt(int value) {
+        ensureCapacity(4);
+        for(int i = 0; i < 4; i++) {
+            buffer[position++] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
+    private void writeByte(int value) {
+        ensureCapacity(1);
+        buffer[position++] = (byte) value;
+    }
+
+    private void writeBytes(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    private void ensureCapacity(int additional) {
+        if(position + additional > buffer.length)
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + additional));
+    }
+
+}
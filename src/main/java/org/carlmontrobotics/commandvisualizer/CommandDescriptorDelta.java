@@ -0,0 +1,27 @@
+package org.carlmontrobotics.commandvisualizer;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+/**
+ * An incremental update to the set of top-level command descriptors. Keyframes contain every descriptor; other
+ * deltas contain only the descriptors that were added or changed and the ids of those that were removed.
+ */
+public class CommandDescriptorDelta {
+
+    public long sequence;
+    public boolean isKeyframe;
+    public CommandDescriptor[] changed = new CommandDescriptor[0];
+    public int[] removed = new int[0];
+
+    private static final ObjectReader reader = CommandDescriptor.mapper.readerFor(CommandDescriptorDelta.class);
+
+    public String toJson() throws JsonProcessingException {
+        return CommandDescriptor.mapper.writeValueAsString(this);
+    }
+
+    public static CommandDescriptorDelta fromJson(String json) throws JsonProcessingException {
+        return reader.readValue(json);
+    }
+
+}
@@ -0,0 +1,57 @@
+package org.carlmontrobotics.commandvisualizer;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+/**
+ * Rebuilds the published descriptors on the client side from a stream of {@link CommandDescriptorDelta}s.
+ */
+public class CommandDescriptorDeltaApplier {
+
+    private final Map<Integer, CommandDescriptor> descriptors = new LinkedHashMap<>();
+    private long sequence;
+    private boolean synced = false;
+
+    public boolean apply(String json) throws JsonProcessingException {
+        return apply(CommandDescriptorDelta.fromJson(json));
+    }
+
+    /**
+     * Applies a delta to the current state.
+     *
+     * @return false if the delta could not be applied because deltas were missed; the state is kept as it was
+     *         and a keyframe should be requested (see {@link CommandVisualizer#KEYFRAME_REQUEST_NT_KEY})
+     */
+    public boolean apply(CommandDescriptorDelta delta) {
+        if(delta.isKeyframe) {
+            descriptors.clear();
+        } else if(!synced || delta.sequence != sequence + 1) {
+            synced = false;
+            return false;
+        }
+
+        for(int id : delta.removed)
+            descriptors.remove(id);
+        for(CommandDescriptor descriptor : delta.changed)
+            descriptors.put(descriptor.id, descriptor);
+
+        sequence = delta.sequence;
+        synced = true;
+        return true;
+    }
+
+    public boolean needsKeyframe() {
+        return !synced;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public CommandDescriptor[] getDescriptors() {
+        return descriptors.values().toArray(CommandDescriptor[]::new);
+    }
+
+}
@@ -2,6 +2,8 @@ package org.carlmontrobotics.commandvisualizer;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
 import java.util.WeakHashMap;
 
 import edu.wpi.first.wpilibj2.command.Command;
@@ -9,53 +11,77 @@ import edu.wpi.first.wpilibj2.command.CommandScheduler;
 
 public class CommandDescriptorFactory {
 
+    // Modify through registerDescriber so that cached resolutions are invalidated
     public static final Map<Class<? extends Command>, CommandDescriber<? extends Command>> describers = new HashMap<>();
     public static final Map<Command, CommandDescriptor> descriptors = new WeakHashMap<>();
+    // Commands' ids, kept separately from the descriptors so that a command keeps its id when its descriptor is
+    // evicted. Weakly keyed like the descriptors, so a collected command's entry disappears without any cleanup.
+    private static final Map<Command, Integer> ids = new WeakHashMap<>();
+
+    private static volatile ClassValue<Resolution> resolutions = newResolutionCache();
+    // Ids are never reused, so a collected command's id cannot be mistaken for a newer command's
+    private static int nextId = 0;
+    private static long generation = 0;
+    // Time spent in nested describers while metrics are enabled, so that each describer's exclusive time is recorded
+    private static long nestedDescribeNanos = 0;
+
+    static {
+        try {
+            for(GeneratedDescriber<?> describer : ServiceLoader.load(GeneratedDescriber.class))
+                registerGeneratedDescriber(describer);
+        } catch(ServiceConfigurationError e) {
+            e.printStackTrace();
+        }
+    }
 
     public static <T extends Command> void registerDescriber(Class<T> clazz, CommandDescriber<T> describer) {
         describers.put(clazz, describer);
+        resolutions = newResolutionCache();
+    }
+
+    private static <T extends Command> void registerGeneratedDescriber(GeneratedDescriber<T> describer) {
+        registerDescriber(describer.getCommandClass(), describer);
+    }
+
+    /**
+     * Starts a new generation, e.g. a new tick. {@link #fromCommand(Command, boolean)} describes each command at
+     * most once per generation and returns the same descriptor for later calls, so this must be called before
+     * describing commands again.
+     */
+    public static void nextGeneration() {
+        generation++;
+    }
+
+    static long getGeneration() {
+        return generation;
     }
 
     @SuppressWarnings({"rawtypes", "unchecked"})
     public static CommandDescriptor fromCommand(Command command, boolean isRunning) throws WrapperException {
         try {
-            CommandDescriptor descriptor = descriptors.computeIfAbsent(command, cmd -> {
-                CommandDescriptor newDescriptor = new CommandDescriptor();
-                newDescriptor.id = System.identityHashCode(command);
-                while(descriptors.values().stream().anyMatch(d -> d.id == newDescriptor.id))
-                    newDescriptor.id++;
-                return newDescriptor;
-            });
-
-            descriptor.name = command.getName();
-            descriptor.clazz = command.getClass().getName();
+            CommandDescriptor descriptor = getDescriptor(command);
+            // Commands shared between groups are only described once per generation, unless a later parent
+            // reveals that the command is running
+            if(descriptor.generation == generation && (descriptor.isRunning || !isRunning))
+                return descriptor;
+            descriptor.generation = generation;
+
+            // Cheap to check, and rebuilt only when the command was e.g. renamed or given new requirements
+            if(descriptor.structure == null || !descriptor.structure.matches(command))
+                CommandStructure.of(command).applyTo(descriptor);
+
             descriptor.isRunning = isRunning;
-            descriptor.runsWhenDisabled = command.runsWhenDisabled();
             descriptor.isComposed = CommandScheduler.getInstance().isComposed(command);
-            descriptor.interruptionBehavior = command.getInterruptionBehavior();
-            descriptor.subCommands = new CommandDescriptor[0];
-            descriptor.requirements = command.getRequirements().stream().map(Object::getClass)
-                    .map(clazz -> clazz.getName()).toArray(String[]::new);
-
-            if(command instanceof Describable) {
-                descriptor.describer = command.getClass().getName();
-                ((Describable) command).describe(descriptor, isRunning);
-            } else {
-                Class<? extends Command> clazz = command.getClass();
-
-                for(;;) { // Walk up the class hierarchy
-                    if(describers.containsKey(clazz)) { // This could be optimized
-                        // Cast away the generic type
-                        CommandDescriber describer = (CommandDescriber) describers.get(clazz);
-                        descriptor.describer = describer.getClass().getName();
-                        describer.describe(descriptor, command, isRunning);
-                        break;
-                    }
-
-                    if(Command.class.isAssignableFrom(clazz.getSuperclass()))
-                        clazz = clazz.getSuperclass().asSubclass(Command.class);
-                    else break;
-                }
+            descriptor.subCommands = CommandDescriptor.NO_SUB_COMMANDS;
+
+            Resolution resolution = resolutions.get(command.getClass());
+            descriptor.describer = resolution.describerName;
+            if(resolution.describer != null) {
+                if(CommandMetrics.enabled)
+                    describeTimed(resolution, descriptor, command, isRunning);
+                else
+                    // Cast away the generic type
+                    ((CommandDescriber) resolution.describer).describe(descriptor, command, isRunning);
             }
 
             return descriptor;
@@ -64,4 +90,119 @@ public class CommandDescriptorFactory {
         }
     }
 
+    // Records the time spent in a describer, excluding the time spent describing its sub commands, which is recorded
+    // for their own describers
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private static void describeTimed(Resolution resolution, CommandDescriptor descriptor, Command command,
+            boolean isRunning) throws Exception {
+        if(resolution.describeTime == null)
+            resolution.describeTime = CommandMetrics.describeHistogram(resolution.describedClass.getName());
+        long outerNestedNanos = nestedDescribeNanos;
+        nestedDescribeNanos = 0;
+        long start = System.nanoTime();
+        try {
+            ((CommandDescriber) resolution.describer).describe(descriptor, command, isRunning);
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            resolution.describeTime.record(elapsed - nestedDescribeNanos);
+            nestedDescribeNanos = outerNestedNanos + elapsed;
+        }
+    }
+
+    /**
+     * Runs the describer that the superclass of {@code clazz} resolves to, if any. Describers for subclasses call
+     * this to add to what their superclass describes, e.g. the sub commands of a command group, rather than replace
+     * it.
+     */
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    public static void describeAsSuperclass(Class<? extends Command> clazz, CommandDescriptor descriptor,
+            Command command, boolean isRunning) throws Exception {
+        Class<?> superclass = clazz.getSuperclass();
+        if(superclass == null || !Command.class.isAssignableFrom(superclass))
+            return;
+        Resolution resolution = resolutions.get(superclass);
+        if(resolution.describer != null)
+            ((CommandDescriber) resolution.describer).describe(descriptor, command, isRunning);
+    }
+
+    /**
+     * Forgets the descriptors of commands that have not been described in the given number of generations, e.g.
+     * because they are no longer published. If such a command is described again, it gets a new descriptor with
+     * the same id, since ids are kept for as long as the command exists.
+     */
+    public static void evictUndescribed(long generations) {
+        long oldest = generation - generations;
+        descriptors.values().removeIf(descriptor -> descriptor.generation < oldest);
+    }
+
+    /**
+     * Gets the id of the descriptor for a command without describing it.
+     */
+    public static int getId(Command command) {
+        Integer id = ids.get(command);
+        if(id == null) {
+            id = nextId++;
+            ids.put(command, id);
+        }
+        return id;
+    }
+
+    private static CommandDescriptor getDescriptor(Command command) {
+        CommandDescriptor descriptor = descriptors.get(command);
+        if(descriptor == null) {
+            descriptor = new CommandDescriptor();
+            descriptor.id = getId(command);
+            descriptors.put(command, descriptor);
+        }
+        return descriptor;
+    }
+
+    private static ClassValue<Resolution> newResolutionCache() {
+        return new ClassValue<>() {
+            @Override
+            protected Resolution computeValue(Class<?> type) {
+                return resolve(type);
+            }
+        };
+    }
+
+    private static Resolution resolve(Class<?> commandClass) {
+        if(Describable.class.isAssignableFrom(commandClass))
+            return new Resolution(commandClass.getName(), commandClass,
+                    (descriptor, command, isRunning) -> ((Describable) command).describe(descriptor, isRunning));
+
+        Class<?> clazz = commandClass;
+        for(;;) { // Walk up the class hierarchy
+            CommandDescriber<? extends Command> describer = describers.get(clazz);
+            if(describer != null)
+                return new Resolution(describer.getClass().getName(), clazz, describer);
+
+            if(clazz.getSuperclass() != null && Command.class.isAssignableFrom(clazz.getSuperclass()))
+                clazz = clazz.getSuperclass();
+            else break;
+        }
+
+        return Resolution.NONE;
+    }
+
+    // The describer to use for a concrete command class, including the Describable and "no describer" cases
+    private static final class Resolution {
+
+        static final Resolution NONE = new Resolution(null, null, null);
+
+        final String describerName;
+        // The class the describer was registered for, which names its metrics since describers are often lambdas
+        final Class<?> describedClass;
+        final CommandDescriber<? extends Command> describer;
+        // Created when the describer is first timed
+        RollingHistogram describeTime;
+
+        Resolution(String describerName, Class<?> describedClass, CommandDescriber<? extends Command> describer) {
+            this.describerName = describerName;
+            this.describedClass = describedClass;
+            this.describer = describer;
+        }
+
+    }
+
 }
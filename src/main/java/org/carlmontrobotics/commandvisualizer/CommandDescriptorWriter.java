@@ -0,0 +1,211 @@
+package org.carlmontrobotics.commandvisualizer;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * Streams descriptors to JSON through a {@link JsonGenerator} into a buffer that is reused between calls. The
+ * output matches what Jackson's {@link com.fasterxml.jackson.databind.ObjectMapper} produces for
+ * {@link CommandDescriptor}, which writes the fields in the order they are declared, so keep the two in sync.
+ * Instances are not thread safe, and the returned {@link CharSequence} is only valid until the next call.
+ */
+class CommandDescriptorWriter {
+
+    private final StringBuilder buffer = new StringBuilder(8192);
+    private final Writer bufferWriter = new Writer() {
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+            buffer.append(cbuf, off, len);
+        }
+
+        @Override
+        public void write(String str, int off, int len) {
+            buffer.append(str, off, off + len);
+        }
+
+        @Override
+        public void flush() {}
+
+        @Override
+        public void close() {}
+    };
+    // Reused for every call; recreated if a write fails part way through
+    private JsonGenerator generator = createGenerator();
+
+    public CharSequence write(CommandDescriptor[] descriptors) throws IOException {
+        buffer.setLength(0);
+        try {
+            generator.writeStartArray();
+            for(CommandDescriptor descriptor : descriptors)
+                writeDescriptor(generator, descriptor);
+            generator.writeEndArray();
+            generator.flush();
+        } catch(IOException | RuntimeException e) {
+            generator = createGenerator();
+            throw e;
+        }
+        return buffer;
+    }
+
+    public CharSequence write(CommandDescriptor descriptor) throws IOException {
+        buffer.setLength(0);
+        try {
+            writeDescriptor(generator, descriptor);
+            generator.flush();
+        } catch(IOException | RuntimeException e) {
+            generator = createGenerator();
+            throw e;
+        }
+        return buffer;
+    }
+
+    /**
+     * Writes a {@link CommandDescriptorDelta} whose changed descriptors have already been serialized.
+     */
+    public CharSequence writeDelta(long sequence, boolean isKeyframe, List<String> changedJson, List<Integer> removed)
+            throws IOException {
+        buffer.setLength(0);
+        try {
+            generator.writeStartObject();
+            generator.writeNumberField("sequence", sequence);
+            generator.writeBooleanField("isKeyframe", isKeyframe);
+            generator.writeArrayFieldStart("changed");
+            for(int i = 0; i < changedJson.size(); i++)
+                generator.writeRawValue(changedJson.get(i));
+            generator.writeEndArray();
+            generator.writeArrayFieldStart("removed");
+            for(int i = 0; i < removed.size(); i++)
+                generator.writeNumber(removed.get(i));
+            generator.writeEndArray();
+            generator.writeEndObject();
+            generator.flush();
+        } catch(IOException | RuntimeException e) {
+            generator = createGenerator();
+            throw e;
+        }
+        return buffer;
+    }
+
+    /**
+     * Writes a {@link CommandEvent} without creating one.
+     */
+    public CharSequence writeEvent(CommandEvent.Type type, int id, double timestamp) throws IOException {
+        buffer.setLength(0);
+        try {
+            generator.writeStartObject();
+            generator.writeStringField("type", type.name());
+            generator.writeNumberField("id", id);
+            generator.writeNumberField("timestamp", timestamp);
+            generator.writeEndObject();
+            generator.flush();
+        } catch(IOException | RuntimeException e) {
+            generator = createGenerator();
+            throw e;
+        }
+        return buffer;
+    }
+
+    private JsonGenerator createGenerator() {
+        try {
+            JsonGenerator newGenerator = CommandDescriptor.mapper.getFactory().createGenerator(bufferWriter);
+            // Each call writes a single root value into a cleared buffer
+            newGenerator.setRootValueSeparator(null);
+            return newGenerator;
+        } catch(IOException e) {
+            throw new WrapperException(e);
+        }
+    }
+
+    private static void writeDescriptor(JsonGenerator generator, CommandDescriptor descriptor) throws IOException {
+        generator.writeStartObject();
+        generator.writeNumberField("id", descriptor.id);
+        generator.writeStringField("name", descriptor.name);
+        generator.writeStringField("clazz", descriptor.clazz);
+        generator.writeStringField("describer", descriptor.describer);
+        generator.writeBooleanField("runsWhenDisabled", descriptor.runsWhenDisabled);
+        generator.writeFieldName("interruptionBehavior");
+        if(descriptor.interruptionBehavior == null)
+            generator.writeNull();
+        else
+            generator.writeString(descriptor.interruptionBehavior.name());
+        generator.writeFieldName("requirements");
+        writeStrings(generator, descriptor.requirements);
+        generator.writeBooleanField("isRunning", descriptor.isRunning);
+        generator.writeBooleanField("isComposed", descriptor.isComposed);
+
+        generator.writeFieldName("parameters");
+        if(descriptor.parameters == null) {
+            generator.writeNull();
+        } else {
+            CommandParameters parameters = descriptor.parameters;
+            generator.writeStartObject();
+            for(int i = 0; i < parameters.size(); i++) {
+                generator.writeFieldName(parameters.getKey(i));
+                // Read primitive slots directly so that they are not boxed
+                switch(parameters.getKind(i)) {
+                    case CommandParameters.DOUBLE:
+                        generator.writeNumber(parameters.getDouble(i));
+                        break;
+                    case CommandParameters.LONG:
+                        generator.writeNumber(parameters.getLong(i));
+                        break;
+                    case CommandParameters.BOOLEAN:
+                        generator.writeBoolean(parameters.getBoolean(i));
+                        break;
+                    default:
+                        writeValue(generator, parameters.getObject(i));
+                        break;
+                }
+            }
+            generator.writeEndObject();
+        }
+
+        generator.writeFieldName("subCommands");
+        if(descriptor.subCommands == null) {
+            generator.writeNull();
+        } else {
+            generator.writeStartArray();
+            for(CommandDescriptor subCommand : descriptor.subCommands) {
+                if(subCommand == null)
+                    generator.writeNull();
+                else
+                    writeDescriptor(generator, subCommand);
+            }
+            generator.writeEndArray();
+        }
+        generator.writeEndObject();
+    }
+
+    private static void writeValue(JsonGenerator generator, Object value) throws IOException {
+        // Handle the types the built-in describers produce without going through databind
+        if(value instanceof Double)
+            generator.writeNumber((Double) value);
+        else if(value instanceof Boolean)
+            generator.writeBoolean((Boolean) value);
+        else if(value instanceof String)
+            generator.writeString((String) value);
+        else if(value instanceof String[])
+            writeStrings(generator, (String[]) value);
+        else if(value instanceof Integer)
+            generator.writeNumber((Integer) value);
+        else if(value instanceof Long)
+            generator.writeNumber((Long) value);
+        else
+            generator.writeObject(value);
+    }
+
+    private static void writeStrings(JsonGenerator generator, String[] values) throws IOException {
+        if(values == null) {
+            generator.writeNull();
+            return;
+        }
+        generator.writeStartArray();
+        for(String value : values)
+            generator.writeString(value);
+        generator.writeEndArray();
+    }
+
+}
@@ -0,0 +1,30 @@
+package org.carlmontrobotics.commandvisualizer;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+/**
+ * A change in a command's state, as published to event loggers. {@link #id} is the id of the command's
+ * {@link CommandDescriptor} and {@link #timestamp} is the FPGA time in seconds.
+ */
+public class CommandEvent {
+
+    public enum Type {
+        INITIALIZE, FINISH, INTERRUPT
+    }
+
+    private static final ObjectReader reader = CommandDescriptor.mapper.readerFor(CommandEvent.class);
+
+    public Type type;
+    public int id;
+    public double timestamp;
+
+    public String toJson() throws JsonProcessingException {
+        return CommandDescriptor.mapper.writeValueAsString(this);
+    }
+
+    public static CommandEvent fromJson(String json) throws JsonProcessingException {
+        return reader.readValue(json);
+    }
+
+}
@@ -0,0 +1,12 @@
+package org.carlmontrobotics.commandvisualizer;
+
+/**
+ * Receives command events as soon as the scheduler reports them, on the robot loop thread. Arguments are passed
+ * unboxed so that listeners can handle events without allocating.
+ */
+@FunctionalInterface
+public interface CommandEventListener {
+
+    public void onCommandEvent(CommandEvent.Type type, int id, double timestamp);
+
+}
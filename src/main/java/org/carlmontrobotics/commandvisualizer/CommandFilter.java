@@ -0,0 +1,122 @@
+package org.carlmontrobotics.commandvisualizer;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Selects which commands a filtered logger receives. A top-level command is published to the logger if the filter
+ * matches it or any of its sub commands, and is then published with all of its sub commands so that the client still
+ * sees where the matching command runs.
+ */
+@FunctionalInterface
+public interface CommandFilter {
+
+    public boolean matches(CommandDescriptor descriptor);
+
+    /**
+     * @return whether this filter matches the descriptor or any of its sub commands
+     */
+    public default boolean matchesTree(CommandDescriptor descriptor) {
+        if(matches(descriptor))
+            return true;
+        for(CommandDescriptor subCommand : descriptor.subCommands) {
+            if(subCommand != null && matchesTree(subCommand))
+                return true;
+        }
+        return false;
+    }
+
+    public default CommandFilter and(CommandFilter other) {
+        return descriptor -> matches(descriptor) && other.matches(descriptor);
+    }
+
+    public default CommandFilter or(CommandFilter other) {
+        return descriptor -> matches(descriptor) || other.matches(descriptor);
+    }
+
+    /**
+     * Matches commands that require a subsystem, given either by its fully qualified or its simple class name.
+     */
+    public static CommandFilter requiring(String subsystem) {
+        String suffix = "." + subsystem, nestedSuffix = "$" + subsystem;
+        return descriptor -> {
+            for(String requirement : descriptor.requirements) {
+                if(requirement.equals(subsystem) || requirement.endsWith(suffix) || requirement.endsWith(nestedSuffix))
+                    return true;
+            }
+            return false;
+        };
+    }
+
+    /**
+     * Matches commands whose whole name matches a regular expression. Some expressions take exponential time to
+     * match, so use {@link #nameGlob(String)} for patterns that come from other devices.
+     */
+    public static CommandFilter nameMatching(String regex) {
+        Pattern pattern = Pattern.compile(regex);
+        // Names rarely change, so avoid running the regex on every tick
+        Map<String, Boolean> results = new ConcurrentHashMap<>();
+        return descriptor -> descriptor.name != null
+                && results.computeIfAbsent(descriptor.name, name -> pattern.matcher(name).matches());
+    }
+
+    /**
+     * Matches commands whose whole fully qualified class name matches a regular expression.
+     */
+    public static CommandFilter classMatching(String regex) {
+        Pattern pattern = Pattern.compile(regex);
+        Map<String, Boolean> results = new ConcurrentHashMap<>();
+        return descriptor -> descriptor.clazz != null
+                && results.computeIfAbsent(descriptor.clazz, clazz -> pattern.matcher(clazz).matches());
+    }
+
+    /**
+     * Matches commands whose whole name matches a glob, in which {@code *} matches any run of characters and
+     * {@code ?} matches any one character. Unlike a regular expression, a glob takes at most time proportional to
+     * the product of its length and the name's to match, so it is safe to accept from other devices.
+     */
+    public static CommandFilter nameGlob(String glob) {
+        Map<String, Boolean> results = new ConcurrentHashMap<>();
+        return descriptor -> descriptor.name != null
+                && results.computeIfAbsent(descriptor.name, name -> globMatches(glob, name));
+    }
+
+    /**
+     * Matches commands whose whole fully qualified class name matches a glob, see {@link #nameGlob(String)}.
+     */
+    public static CommandFilter classGlob(String glob) {
+        Map<String, Boolean> results = new ConcurrentHashMap<>();
+        return descriptor -> descriptor.clazz != null
+                && results.computeIfAbsent(descriptor.clazz, clazz -> globMatches(glob, clazz));
+    }
+
+    public static CommandFilter running() {
+        return descriptor -> descriptor.isRunning;
+    }
+
+    private static boolean globMatches(String glob, String text) {
+        int g = 0, t = 0;
+        // The position after the last * and the text position it was last tried at
+        int star = -1, starText = 0;
+        while(t < text.length()) {
+            if(g < glob.length() && glob.charAt(g) == '*') {
+                star = ++g;
+                starText = t;
+            } else if(g < glob.length() && (glob.charAt(g) == '?' || glob.charAt(g) == text.charAt(t))) {
+                g++;
+                t++;
+            } else if(star >= 0) {
+                // Let the last * match one more character and try again from there
+                g = star;
+                t = ++starText;
+            } else {
+                return false;
+            }
+        }
+        while(g < glob.length() && glob.charAt(g) == '*')
+            g++;
+        return g == glob.length();
+    }
+
+}
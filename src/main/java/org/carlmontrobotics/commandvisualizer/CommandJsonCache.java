@@ -0,0 +1,43 @@
+package org.carlmontrobotics.commandvisualizer;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+// Encodes each top-level descriptor at most once per publish, however many loggers and filters include it. If a
+// descriptor has not changed since the previous publish, the previous string is returned again instead of a copy.
+class CommandJsonCache {
+
+    private final CommandDescriptorWriter writer;
+    private Map<Integer, String> previous = new HashMap<>();
+    private Map<Integer, String> current = new HashMap<>();
+
+    CommandJsonCache(CommandDescriptorWriter writer) {
+        this.writer = writer;
+    }
+
+    /**
+     * Starts a new publish. Descriptors that were not encoded during the last one are forgotten.
+     */
+    void nextPublish() {
+        Map<Integer, String> last = previous;
+        previous = current;
+        current = last;
+        current.clear();
+    }
+
+    String get(CommandDescriptor descriptor) throws IOException {
+        String json = current.get(descriptor.id);
+        if(json != null)
+            return json;
+
+        CharSequence encoded = writer.write(descriptor);
+        json = previous.get(descriptor.id);
+        // Only allocate a new string for descriptors that changed
+        if(json == null || !json.contentEquals(encoded))
+            json = encoded.toString();
+        current.put(descriptor.id, json);
+        return json;
+    }
+
+}
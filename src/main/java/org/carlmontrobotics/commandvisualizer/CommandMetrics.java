@@ -0,0 +1,122 @@
+package org.carlmontrobotics.commandvisualizer;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableInstance;
+
+/**
+ * Self-instrumentation for {@link CommandVisualizer}, enabled with {@link CommandVisualizer#enableMetrics()}. Times
+ * are published in microseconds. While disabled, each instrumented point only reads {@link #enabled}; while enabled,
+ * recording writes into preallocated histograms and does not allocate.
+ */
+class CommandMetrics {
+
+    static final int WINDOW = 512;
+    // Publish once a second so that summarizing the histograms stays off most ticks
+    static final int PUBLISH_INTERVAL = 50;
+    private static final double NANOS_TO_MICROS = 1e-3;
+
+    // Set from any thread. Volatile so that enabling and disabling take effect on the robot loop and the async
+    // publisher right away; the read is cheap next to anything that is instrumented.
+    static volatile boolean enabled = false;
+
+    private static final Map<String, RollingHistogram> histograms = new ConcurrentHashMap<>();
+    private static final Map<Object, RollingHistogram> loggerHistograms = new ConcurrentHashMap<>();
+    private static final Map<String, Integer> loggerCounts = new ConcurrentHashMap<>();
+
+    static final RollingHistogram logCommandsTime = time("LogCommands");
+    static final RollingHistogram describeAllTime = time("DescribeAll");
+    static final RollingHistogram publishTime = time("Publish");
+    static final RollingHistogram descriptorCount = count("Descriptors");
+    static final RollingHistogram fullSerializeTime = time("Serialize/Full");
+    static final RollingHistogram deltaSerializeTime = time("Serialize/Delta");
+    static final RollingHistogram binarySerializeTime = time("Serialize/Binary");
+    static final RollingHistogram filteredSerializeTime = time("Serialize/Filtered");
+    static final RollingHistogram eventSerializeTime = time("Serialize/Event");
+    // JSON sizes are in chars, which is the size in bytes for ASCII names and parameters
+    static final RollingHistogram fullPayloadSize = count("PayloadSize/Full");
+    static final RollingHistogram deltaPayloadSize = count("PayloadSize/Delta");
+    static final RollingHistogram binaryPayloadSize = count("PayloadSize/Binary");
+
+    private static NetworkTable table;
+    private static int ticksSincePublish = 0;
+
+    /**
+     * @return the start time to pass to a record method, or 0 if metrics are disabled
+     */
+    static long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    static void recordTime(RollingHistogram histogram, long start) {
+        if(start != 0)
+            histogram.record(System.nanoTime() - start);
+    }
+
+    static void record(RollingHistogram histogram, long value) {
+        if(enabled)
+            histogram.record(value);
+    }
+
+    /**
+     * Records the time taken by a logger, creating its histogram the first time it is seen.
+     *
+     * @param kind the kind of logger, e.g. "Delta"
+     */
+    static void recordLogger(String kind, Object logger, long start) {
+        if(start == 0)
+            return;
+        long elapsed = System.nanoTime() - start;
+        RollingHistogram histogram = loggerHistograms.get(logger);
+        if(histogram == null) {
+            histogram = time("Loggers/" + kind + "/" + loggerName(kind, logger));
+            loggerHistograms.put(logger, histogram);
+        }
+        histogram.record(elapsed);
+    }
+
+    static void forgetLogger(Object logger) {
+        RollingHistogram histogram = loggerHistograms.remove(logger);
+        if(histogram != null) {
+            histograms.remove(histogram.name);
+            histogram.close();
+        }
+    }
+
+    static RollingHistogram describeHistogram(String name) {
+        return time("Describe/" + name);
+    }
+
+    // Called periodically on the robot loop thread
+    static void publishPeriodically() {
+        if(!enabled || ++ticksSincePublish < PUBLISH_INTERVAL)
+            return;
+        ticksSincePublish = 0;
+        if(table == null)
+            table = NetworkTableInstance.getDefault().getTable(CommandVisualizer.METRICS_NT_TABLE);
+        for(RollingHistogram histogram : histograms.values())
+            histogram.publish(table);
+    }
+
+    private static RollingHistogram time(String name) {
+        return histograms.computeIfAbsent(name, key -> new RollingHistogram(key, WINDOW, NANOS_TO_MICROS));
+    }
+
+    private static RollingHistogram count(String name) {
+        return histograms.computeIfAbsent(name, key -> new RollingHistogram(key, WINDOW, 1));
+    }
+
+    // e.g. "CommandStreamServer-1" for the second delta logger created by CommandStreamServer
+    private static String loggerName(String kind, Object logger) {
+        String className = logger.getClass().getName();
+        int lambda = className.indexOf("$$Lambda");
+        if(lambda >= 0)
+            className = className.substring(0, lambda);
+        String owner = className.substring(className.lastIndexOf('.') + 1);
+        int index = loggerCounts.merge(kind + "/" + owner, 1, Integer::sum) - 1;
+        return owner + "-" + index;
+    }
+
+}
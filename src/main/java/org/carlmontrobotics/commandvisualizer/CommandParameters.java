@@ -0,0 +1,305 @@
+package org.carlmontrobotics.commandvisualizer;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * The parameters of a {@link CommandDescriptor}. Each key gets a slot the first time it is put, and doubles, longs and
+ * booleans are stored in the slot unboxed, so a describer that puts the same keys every tick updates its slots in
+ * place without allocating. Since describers put their keys in the same order every tick, the next slot is checked
+ * first and found without searching.
+ * <p>
+ * This is also a regular {@link java.util.Map} in insertion order, but reading primitive values through the Map
+ * methods boxes them; encoders read the slots directly with {@link #getKind(int)} and the typed getters.
+ */
+public class CommandParameters extends AbstractMap<String, Object> {
+
+    public static final byte DOUBLE = 0, LONG = 1, BOOLEAN = 2, OBJECT = 3;
+
+    private String[] keys = new String[4];
+    private byte[] kinds = new byte[4];
+    private double[] doubles = new double[4];
+    private long[] longs = new long[4];
+    private Object[] objects = new Object[4];
+    private int size = 0;
+    // The slot after the one last put, which is most likely the next one to be put
+    private int nextSlot = 0;
+    private Set<Entry<String, Object>> entrySet;
+
+    public void putDouble(String key, double value) {
+        setDouble(slot(key), value);
+    }
+
+    public void putLong(String key, long value) {
+        setLong(slot(key), value);
+    }
+
+    public void putBoolean(String key, boolean value) {
+        setBoolean(slot(key), value);
+    }
+
+    public void putString(String key, String value) {
+        setObject(slot(key), value);
+    }
+
+    /**
+     * Puts a value, storing {@link Double}, {@link Long} and {@link Boolean} values unboxed. Prefer the typed put
+     * methods, which do not need to box the previous value to return it.
+     */
+    @Override
+    public Object put(String key, Object value) {
+        int previousSize = size;
+        int slot = slot(key);
+        Object previous = slot < previousSize ? getValue(slot) : null;
+        if(value instanceof Double)
+            setDouble(slot, (Double) value);
+        else if(value instanceof Long)
+            setLong(slot, (Long) value);
+        else if(value instanceof Boolean)
+            setBoolean(slot, (Boolean) value);
+        else
+            setObject(slot, value);
+        return previous;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    public String getKey(int slot) {
+        checkSlot(slot);
+        return keys[slot];
+    }
+
+    /**
+     * @return {@link #DOUBLE}, {@link #LONG}, {@link #BOOLEAN} or {@link #OBJECT}
+     */
+    public byte getKind(int slot) {
+        checkSlot(slot);
+        return kinds[slot];
+    }
+
+    public double getDouble(int slot) {
+        checkSlot(slot);
+        return doubles[slot];
+    }
+
+    public long getLong(int slot) {
+        checkSlot(slot);
+        return longs[slot];
+    }
+
+    public boolean getBoolean(int slot) {
+        checkSlot(slot);
+        return longs[slot] != 0;
+    }
+
+    public Object getObject(int slot) {
+        checkSlot(slot);
+        return objects[slot];
+    }
+
+    /**
+     * @return the value in a slot, boxed if it is a primitive
+     */
+    public Object getValue(int slot) {
+        checkSlot(slot);
+        switch(kinds[slot]) {
+            case DOUBLE:
+                return doubles[slot];
+            case LONG:
+                return longs[slot];
+            case BOOLEAN:
+                return longs[slot] != 0;
+            default:
+                return objects[slot];
+        }
+    }
+
+    @Override
+    public Object get(Object key) {
+        int slot = indexOf(key);
+        return slot < 0 ? null : getValue(slot);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return indexOf(key) >= 0;
+    }
+
+    @Override
+    public Object remove(Object key) {
+        int slot = indexOf(key);
+        if(slot < 0)
+            return null;
+        Object previous = getValue(slot);
+        removeSlot(slot);
+        return previous;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(keys, 0, size, null);
+        Arrays.fill(objects, 0, size, null);
+        size = 0;
+        nextSlot = 0;
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        if(entrySet == null) {
+            entrySet = new AbstractSet<>() {
+                @Override
+                public Iterator<Entry<String, Object>> iterator() {
+                    return new Iterator<>() {
+                        private int next = 0;
+                        private int last = -1;
+
+                        @Override
+                        public boolean hasNext() {
+                            return next < size;
+                        }
+
+                        @Override
+                        public Entry<String, Object> next() {
+                            if(next >= size)
+                                throw new NoSuchElementException();
+                            last = next++;
+                            return new SimpleImmutableEntry<>(keys[last], getValue(last));
+                        }
+
+                        @Override
+                        public void remove() {
+                            if(last < 0)
+                                throw new IllegalStateException();
+                            removeSlot(last);
+                            next = last;
+                            last = -1;
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return size;
+                }
+            };
+        }
+        return entrySet;
+    }
+
+    /**
+     * Copies the parameters so that the copy is unaffected by later ticks.
+     */
+    public CommandParameters copy() {
+        CommandParameters copy = new CommandParameters();
+        copy.copyFrom(this);
+        return copy;
+    }
+
+    /**
+     * Replaces these parameters with a copy of another instance's, reusing this instance's slots and arrays.
+     */
+    void copyFrom(CommandParameters source) {
+        ensureCapacity(source.size);
+        System.arraycopy(source.keys, 0, keys, 0, source.size);
+        System.arraycopy(source.kinds, 0, kinds, 0, source.size);
+        System.arraycopy(source.doubles, 0, doubles, 0, source.size);
+        System.arraycopy(source.longs, 0, longs, 0, source.size);
+        for(int i = 0; i < source.size; i++) {
+            Object value = source.objects[i];
+            // Describers may reuse arrays between ticks, so copy them into an array of our own
+            if(value instanceof String[]) {
+                String[] array = (String[]) value;
+                String[] copy = objects[i] instanceof String[] && ((String[]) objects[i]).length == array.length
+                        ? (String[]) objects[i] : new String[array.length];
+                System.arraycopy(array, 0, copy, 0, array.length);
+                value = copy;
+            }
+            objects[i] = value;
+        }
+        if(size > source.size) {
+            Arrays.fill(keys, source.size, size, null);
+            Arrays.fill(objects, source.size, size, null);
+        }
+        size = source.size;
+        nextSlot = 0;
+    }
+
+    private int slot(String key) {
+        int slot = nextSlot < size && key.equals(keys[nextSlot]) ? nextSlot : indexOf(key);
+        if(slot < 0) {
+            ensureCapacity(size + 1);
+            slot = size++;
+            keys[slot] = key;
+        }
+        nextSlot = slot + 1 < size ? slot + 1 : 0;
+        return slot;
+    }
+
+    private void setDouble(int slot, double value) {
+        kinds[slot] = DOUBLE;
+        doubles[slot] = value;
+        objects[slot] = null;
+    }
+
+    private void setLong(int slot, long value) {
+        kinds[slot] = LONG;
+        longs[slot] = value;
+        objects[slot] = null;
+    }
+
+    private void setBoolean(int slot, boolean value) {
+        kinds[slot] = BOOLEAN;
+        longs[slot] = value ? 1 : 0;
+        objects[slot] = null;
+    }
+
+    private void setObject(int slot, Object value) {
+        kinds[slot] = OBJECT;
+        objects[slot] = value;
+    }
+
+    private int indexOf(Object key) {
+        for(int i = 0; i < size; i++) {
+            if(keys[i].equals(key))
+                return i;
+        }
+        return -1;
+    }
+
+    private void removeSlot(int slot) {
+        int moved = size - slot - 1;
+        System.arraycopy(keys, slot + 1, keys, slot, moved);
+        System.arraycopy(kinds, slot + 1, kinds, slot, moved);
+        System.arraycopy(doubles, slot + 1, doubles, slot, moved);
+        System.arraycopy(longs, slot + 1, longs, slot, moved);
+        System.arraycopy(objects, slot + 1, objects, slot, moved);
+        size--;
+        keys[size] = null;
+        objects[size] = null;
+        nextSlot = 0;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if(capacity > keys.length) {
+            int length = Math.max(keys.length * 2, capacity);
+            keys = Arrays.copyOf(keys, length);
+            kinds = Arrays.copyOf(kinds, length);
+            doubles = Arrays.copyOf(doubles, length);
+            longs = Arrays.copyOf(longs, length);
+            objects = Arrays.copyOf(objects, length);
+        }
+    }
+
+    private void checkSlot(int slot) {
+        if(slot < 0 || slot >= size)
+            throw new IndexOutOfBoundsException("Slot " + slot + " out of bounds for " + size + " parameters");
+    }
+
+}
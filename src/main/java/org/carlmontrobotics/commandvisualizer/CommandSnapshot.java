@@ -0,0 +1,75 @@
+package org.carlmontrobotics.commandvisualizer;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+// A reusable copy of the described commands that another thread can read while the robot loop describes the next
+// tick. Each descriptor is copied once, and afterwards only its per-tick state is copied into that copy, along with
+// its structural fields when the command's CommandStructure was rebuilt. Every descriptor is still visited on every
+// tick: every top-level command is described each tick, so generations cannot tell which ones changed, and comparing
+// state to skip unchanged ones would cost about as much as copying it. The copy does not allocate once warmed up.
+class CommandSnapshot {
+
+    // Keyed by the robot loop's descriptors, so copies are dropped along with evicted descriptors
+    private final Map<CommandDescriptor, CommandDescriptor> copies = new WeakHashMap<>();
+    private CommandDescriptor[] descriptors = CommandDescriptor.NO_SUB_COMMANDS;
+    private long generation = 0;
+    // Whether the snapshot holds state that has not been published yet, see AsyncCommandPublisher
+    boolean fresh = false;
+
+    /**
+     * Copies the state of the given top-level descriptors into this snapshot.
+     */
+    void copyFrom(CommandDescriptor[] source) {
+        generation++;
+        if(descriptors.length != source.length)
+            descriptors = new CommandDescriptor[source.length];
+        for(int i = 0; i < source.length; i++)
+            descriptors[i] = copyOf(source[i]);
+    }
+
+    /**
+     * @return the copied top-level descriptors, which are reused by the next {@link #copyFrom(CommandDescriptor[])}
+     */
+    CommandDescriptor[] getDescriptors() {
+        return descriptors;
+    }
+
+    private CommandDescriptor copyOf(CommandDescriptor source) {
+        if(source == null)
+            return null;
+        CommandDescriptor copy = copies.get(source);
+        if(copy == null) {
+            copy = new CommandDescriptor();
+            copy.id = source.id;
+            copies.put(source, copy);
+        }
+        // Shared sub commands are only copied once
+        if(copy.generation == generation)
+            return copy;
+        copy.generation = generation;
+
+        // Descriptors that were not built by CommandDescriptorFactory have no structure to compare
+        if(copy.structure != source.structure || source.structure == null) {
+            copy.name = source.name;
+            copy.clazz = source.clazz;
+            copy.runsWhenDisabled = source.runsWhenDisabled;
+            copy.interruptionBehavior = source.interruptionBehavior;
+            copy.requirements = source.requirements;
+            copy.structure = source.structure;
+        }
+        copy.describer = source.describer;
+        copy.isRunning = source.isRunning;
+        copy.isComposed = source.isComposed;
+        copy.parameters.copyFrom(source.parameters);
+        if(source.subCommands.length == 0) {
+            copy.subCommands = CommandDescriptor.NO_SUB_COMMANDS;
+        } else {
+            CommandDescriptor[] subCommands = copy.subCommandSlots(source.subCommands.length);
+            for(int i = 0; i < subCommands.length; i++)
+                subCommands[i] = copyOf(source.subCommands[i]);
+        }
+        return copy;
+    }
+
+}
@@ -0,0 +1,422 @@
+package org.carlmontrobotics.commandvisualizer;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.function.Consumer;
+
+/**
+ * An embedded HTTP server that streams {@link CommandDescriptorDelta}s to any number of dashboard clients as
+ * Server-Sent Events. Each client first receives a keyframe and then every delta, as {@code event: delta} messages
+ * whose data can be passed to {@link CommandDescriptorDeltaApplier#apply(String)}.
+ * <p>
+ * Every client has its own bounded send queue. If a client falls behind, its queue is dropped and only that client
+ * is sent a keyframe of the current state instead of the next delta, so a slow client never delays the robot or
+ * makes other clients (or other delta loggers) receive keyframes. New clients also start from a keyframe of their
+ * own, sent with the next delta. All socket I/O happens on a single daemon thread using non-blocking NIO.
+ * <p>
+ * Clients can limit the stream to some commands with query parameters, which are combined with
+ * {@link CommandFilter#and(CommandFilter)}:
+ * <ul>
+ * <li>{@code subsystem}: see {@link CommandFilter#requiring(String)}
+ * <li>{@code name}: see {@link CommandFilter#nameGlob(String)}
+ * <li>{@code class}: see {@link CommandFilter#classGlob(String)}
+ * <li>{@code running=true}: see {@link CommandFilter#running()}
+ * </ul>
+ * Names and classes are matched with globs rather than regular expressions, since filters run while publishing and
+ * any device on the network can connect. Clients that use the same query share one filtered delta logger, which is
+ * unregistered when the last of them disconnects. At most {@link #MAX_CLIENTS} clients and {@link #MAX_STREAMS}
+ * distinct queries are served at a time; further requests are answered with {@code 503 Service Unavailable}.
+ * <p>
+ * {@link #start()} and {@link #start(int)} listen on every interface so that dashboards on the driver station can
+ * connect, which lets anything on the robot's network read the commands. Use
+ * {@link #start(InetSocketAddress)} with e.g. {@link InetAddress#getLoopbackAddress()} to only accept local
+ * clients.
+ * <p>
+ * In simulation, try it with {@code curl -N http://localhost:5810/commands} or
+ * {@code curl -N "http://localhost:5810/commands?subsystem=Arm&running=true"}.
+ */
+public class CommandStreamServer {
+
+    public static final int DEFAULT_PORT = 5810;
+    public static final String PATH = "/commands";
+    public static final int MAX_QUEUED_MESSAGES = 16;
+    public static final int MAX_CLIENTS = 16;
+    public static final int MAX_STREAMS = 8;
+
+    private static final int MAX_REQUEST_SIZE = 8192;
+    private static final byte[] RESPONSE_HEADERS = ("HTTP/1.1 200 OK\r\n"
+            + "Content-Type: text/event-stream\r\n"
+            + "Cache-Control: no-cache\r\n"
+            + "Connection: keep-alive\r\n"
+            + "Access-Control-Allow-Origin: *\r\n"
+            + "\r\n").getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NOT_FOUND = errorResponse("404 Not Found");
+    private static final byte[] BAD_REQUEST = errorResponse("400 Bad Request");
+    private static final byte[] SERVICE_UNAVAILABLE = errorResponse("503 Service Unavailable");
+
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final Set<Client> clients = new CopyOnWriteArraySet<>();
+    // Keyed by query string. Only used by the server thread.
+    private final Map<String, Stream> streams = new HashMap<>();
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    // The clients that receive the deltas from one delta logger
+    private static class Stream {
+        final String query;
+        final Set<Client> clients = new CopyOnWriteArraySet<>();
+        Consumer<String> logger;
+
+        Stream(String query) {
+            this.query = query;
+        }
+    }
+
+    private static class Client {
+        final SocketChannel channel;
+        final ByteBuffer request = ByteBuffer.allocate(MAX_REQUEST_SIZE);
+        final ArrayDeque<ByteBuffer> queue = new ArrayDeque<>();
+        boolean isStreaming = false;
+        boolean closeWhenFlushed = false;
+        // Connected while the server was full, so it is answered with an error once its request has been read
+        boolean isRejected = false;
+        // Set until the client has been sent a keyframe to start from
+        boolean awaitingKeyframe = true;
+        Stream stream;
+
+        Client(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    private CommandStreamServer(InetSocketAddress address) throws IOException {
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(address);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+        thread = new Thread(this::run, "CommandVisualizer Stream Server");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public static CommandStreamServer start() throws IOException {
+        return start(DEFAULT_PORT);
+    }
+
+    /**
+     * Starts the server on every interface. It registers delta loggers with {@link CommandVisualizer} as clients
+     * connect.
+     */
+    public static CommandStreamServer start(int port) throws IOException {
+        return start(new InetSocketAddress(port));
+    }
+
+    /**
+     * Starts the server on the given address. Port 0 picks a free port, see {@link #getPort()}.
+     */
+    public static CommandStreamServer start(InetSocketAddress address) throws IOException {
+        return new CommandStreamServer(address);
+    }
+
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    public int getClientCount() {
+        return clients.size();
+    }
+
+    /**
+     * Disconnects every client and unregisters the server's delta loggers.
+     */
+    public void stop() {
+        running = false;
+        selector.wakeup();
+    }
+
+    // Called by CommandVisualizer on the publishing thread
+    private void broadcast(Stream stream, String deltaJson) {
+        if (stream.clients.isEmpty())
+            return;
+        ByteBuffer message = event(deltaJson);
+        // Built at most once per delta, and only if a client needs it
+        ByteBuffer keyframe = CommandVisualizer.isPublishingKeyframe() ? message : null;
+
+        for (Client client : stream.clients) {
+            synchronized (client) {
+                if (!client.isStreaming)
+                    continue;
+                if (client.queue.size() >= MAX_QUEUED_MESSAGES) {
+                    // Too slow: drop everything that has not started sending and resynchronize with a keyframe
+                    ByteBuffer partial = client.queue.peek();
+                    client.queue.clear();
+                    if (partial != null && partial.position() > 0)
+                        client.queue.add(partial);
+                    client.awaitingKeyframe = true;
+                }
+                if (!client.awaitingKeyframe) {
+                    client.queue.add(message.duplicate());
+                    continue;
+                }
+                if (keyframe == null) {
+                    try {
+                        keyframe = event(CommandVisualizer.writePublishingKeyframe());
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                        continue;
+                    }
+                }
+                client.awaitingKeyframe = false;
+                client.queue.add(keyframe.duplicate());
+            }
+        }
+        selector.wakeup();
+    }
+
+    private static ByteBuffer event(String deltaJson) {
+        return ByteBuffer.wrap(("event: delta\ndata: " + deltaJson + "\n\n").getBytes(StandardCharsets.UTF_8))
+                .asReadOnlyBuffer();
+    }
+
+    private void run() {
+        try {
+            while (running) {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    try {
+                        if (!key.isValid())
+                            continue;
+                        if (key.isAcceptable())
+                            accept();
+                        if (key.isValid() && key.isReadable())
+                            read(key);
+                    } catch (IOException e) {
+                        close(key);
+                    }
+                }
+                // Deltas may have been queued by the publishing thread since the last pass
+                for (SelectionKey key : selector.keys()) {
+                    if (key.isValid() && key.attachment() instanceof Client) {
+                        try {
+                            flush(key);
+                        } catch (IOException e) {
+                            close(key);
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            for (SelectionKey key : selector.keys())
+                close(key);
+            // Closing the clients unregisters their streams, but make sure that nothing keeps encoding for the server
+            for (Stream stream : streams.values())
+                CommandVisualizer.unregisterDeltaLogger(stream.logger);
+            streams.clear();
+            try {
+                serverChannel.close();
+                selector.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null)
+            return;
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        Client client = new Client(channel);
+        channel.register(selector, SelectionKey.OP_READ, client);
+        if (clients.size() >= MAX_CLIENTS)
+            client.isRejected = true;
+        else
+            clients.add(client);
+    }
+
+    private void read(SelectionKey key) throws IOException {
+        Client client = (Client) key.attachment();
+        if (client.isStreaming || client.closeWhenFlushed) {
+            // Nothing more is expected from the client; drain and detect disconnects
+            ByteBuffer discard = ByteBuffer.allocate(256);
+            if (client.channel.read(discard) < 0)
+                close(key);
+            return;
+        }
+        if (client.channel.read(client.request) < 0) {
+            close(key);
+            return;
+        }
+
+        String request = new String(client.request.array(), 0, client.request.position(),
+                StandardCharsets.US_ASCII);
+        int headerEnd = request.indexOf("\r\n\r\n");
+        if (headerEnd < 0) {
+            if (!client.request.hasRemaining())
+                close(key);
+            return;
+        }
+
+        if (client.isRejected) {
+            respondAndClose(client, SERVICE_UNAVAILABLE);
+            return;
+        }
+        String[] requestLine = request.substring(0, request.indexOf("\r\n")).split(" ");
+        String path = requestLine.length >= 2 ? requestLine[1] : "";
+        String query = "";
+        int queryStart = path.indexOf('?');
+        if (queryStart >= 0) {
+            query = path.substring(queryStart + 1);
+            path = path.substring(0, queryStart);
+        }
+
+        if (!requestLine[0].equals("GET") || !(path.equals(PATH) || path.equals("/"))) {
+            respondAndClose(client, NOT_FOUND);
+            return;
+        }
+        Stream stream = streams.get(query);
+        if (stream == null) {
+            // Every distinct query is filtered and encoded separately while publishing
+            if (streams.size() >= MAX_STREAMS) {
+                respondAndClose(client, SERVICE_UNAVAILABLE);
+                return;
+            }
+            CommandFilter filter;
+            try {
+                filter = parseFilter(query);
+            } catch (IllegalArgumentException e) {
+                respondAndClose(client, BAD_REQUEST);
+                return;
+            }
+            Stream newStream = new Stream(query);
+            newStream.logger = json -> broadcast(newStream, json);
+            // Each client is sent a keyframe of its own, so the other delta loggers do not need one
+            CommandVisualizer.addDeltaLogger(filter, newStream.logger);
+            streams.put(query, newStream);
+            stream = newStream;
+        }
+
+        synchronized (client) {
+            client.queue.add(ByteBuffer.wrap(RESPONSE_HEADERS));
+            client.isStreaming = true;
+            client.stream = stream;
+        }
+        stream.clients.add(client);
+    }
+
+    private static void respondAndClose(Client client, byte[] response) {
+        synchronized (client) {
+            client.queue.add(ByteBuffer.wrap(response));
+            client.closeWhenFlushed = true;
+        }
+    }
+
+    /**
+     * @return the filter described by the query string, or null if it does not filter
+     * @throws IllegalArgumentException if the query has an unknown parameter
+     */
+    private static CommandFilter parseFilter(String query) throws IllegalArgumentException {
+        CommandFilter filter = null;
+        for (String parameter : query.split("&")) {
+            if (parameter.isEmpty())
+                continue;
+            int separator = parameter.indexOf('=');
+            String name = separator < 0 ? parameter : parameter.substring(0, separator);
+            String value = separator < 0 ? "" : URLDecoder.decode(parameter.substring(separator + 1),
+                    StandardCharsets.UTF_8);
+            CommandFilter parameterFilter;
+            switch (name) {
+                case "subsystem":
+                    parameterFilter = CommandFilter.requiring(value);
+                    break;
+                case "name":
+                    parameterFilter = CommandFilter.nameGlob(value);
+                    break;
+                case "class":
+                    parameterFilter = CommandFilter.classGlob(value);
+                    break;
+                case "running":
+                    if (!Boolean.parseBoolean(value))
+                        continue;
+                    parameterFilter = CommandFilter.running();
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown filter " + name);
+            }
+            filter = filter == null ? parameterFilter : filter.and(parameterFilter);
+        }
+        return filter;
+    }
+
+    private static byte[] errorResponse(String status) {
+        return ("HTTP/1.1 " + status + "\r\n"
+                + "Content-Length: 0\r\n"
+                + "Connection: close\r\n"
+                + "\r\n").getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private void flush(SelectionKey key) throws IOException {
+        Client client = (Client) key.attachment();
+        synchronized (client) {
+            while (!client.queue.isEmpty()) {
+                ByteBuffer buffer = client.queue.peek();
+                client.channel.write(buffer);
+                if (buffer.hasRemaining()) {
+                    // The socket buffer is full; continue when the client has read some of it
+                    key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    return;
+                }
+                client.queue.poll();
+            }
+        }
+        if (client.closeWhenFlushed) {
+            close(key);
+            return;
+        }
+        key.interestOps(SelectionKey.OP_READ);
+    }
+
+    private void close(SelectionKey key) {
+        key.cancel();
+        if (key.attachment() instanceof Client) {
+            Client client = (Client) key.attachment();
+            clients.remove(client);
+            Stream stream = client.stream;
+            if (stream != null) {
+                stream.clients.remove(client);
+                // Nobody else uses the stream's logger, so stop describing and encoding deltas for it
+                if (stream.clients.isEmpty() && streams.remove(stream.query, stream))
+                    CommandVisualizer.unregisterDeltaLogger(stream.logger);
+            }
+        }
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+}
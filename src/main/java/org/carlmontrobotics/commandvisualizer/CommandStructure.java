@@ -0,0 +1,57 @@
+package org.carlmontrobotics.commandvisualizer;
+
+import java.util.Objects;
+import java.util.Set;
+
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.Command.InterruptionBehavior;
+import edu.wpi.first.wpilibj2.command.Subsystem;
+
+// The structural fields of a CommandDescriptor: name, clazz, runsWhenDisabled, interruptionBehavior and
+// requirements. These rarely change once a command is built, but a command can be renamed or given requirements
+// later, so they are captured in an immutable structure that is rebuilt whenever the command no longer matches it.
+final class CommandStructure {
+
+    final String name, clazz;
+    final boolean runsWhenDisabled;
+    final InterruptionBehavior interruptionBehavior;
+    final String[] requirements;
+    // Fingerprint of the requirements, which is cheaper to check every tick than their class names
+    private final int requirementCount, requirementHash;
+
+    private CommandStructure(Command command, Set<Subsystem> requirements) {
+        name = command.getName();
+        clazz = command.getClass().getName();
+        runsWhenDisabled = command.runsWhenDisabled();
+        interruptionBehavior = command.getInterruptionBehavior();
+        this.requirements = requirements.stream().map(Object::getClass).map(Class::getName)
+                .toArray(String[]::new);
+        requirementCount = requirements.size();
+        requirementHash = requirements.hashCode();
+    }
+
+    static CommandStructure of(Command command) {
+        return new CommandStructure(command, command.getRequirements());
+    }
+
+    /**
+     * @return whether this is still the structure of the command. The class of a command never changes, so it is
+     *         not compared.
+     */
+    boolean matches(Command command) {
+        Set<Subsystem> requirements = command.getRequirements();
+        return Objects.equals(name, command.getName()) && runsWhenDisabled == command.runsWhenDisabled()
+                && interruptionBehavior == command.getInterruptionBehavior()
+                && requirementCount == requirements.size() && requirementHash == requirements.hashCode();
+    }
+
+    void applyTo(CommandDescriptor descriptor) {
+        descriptor.name = name;
+        descriptor.clazz = clazz;
+        descriptor.runsWhenDisabled = runsWhenDisabled;
+        descriptor.interruptionBehavior = interruptionBehavior;
+        descriptor.requirements = requirements;
+        descriptor.structure = this;
+    }
+
+}
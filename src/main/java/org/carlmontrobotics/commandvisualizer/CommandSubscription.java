@@ -0,0 +1,52 @@
+package org.carlmontrobotics.commandvisualizer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.function.Consumer;
+
+// The loggers registered with one filter, which share the selected commands and their encoding
+class CommandSubscription {
+
+    final CommandFilter filter;
+    final Set<Consumer<String>> loggers = new CopyOnWriteArraySet<>();
+    final Set<Consumer<String>> deltaLoggers = new CopyOnWriteArraySet<>();
+    final CommandDeltaTracker deltaTracker = new CommandDeltaTracker();
+    private final ArrayList<CommandDescriptor> matching = new ArrayList<>();
+    private final StringBuilder snapshot = new StringBuilder();
+
+    CommandSubscription(CommandFilter filter) {
+        this.filter = filter;
+    }
+
+    /**
+     * @return the top-level descriptors that match the filter. The list is reused by the next call.
+     */
+    List<CommandDescriptor> select(CommandDescriptor[] descriptors) {
+        matching.clear();
+        for(CommandDescriptor descriptor : descriptors) {
+            if(filter.matchesTree(descriptor))
+                matching.add(descriptor);
+        }
+        return matching;
+    }
+
+    /**
+     * Joins the cached encodings of the selected descriptors into the same JSON array that
+     * {@link CommandDescriptorWriter#write(CommandDescriptor[])} would produce.
+     */
+    String writeSnapshot(List<CommandDescriptor> selected, CommandJsonCache cache) throws IOException {
+        snapshot.setLength(0);
+        snapshot.append('[');
+        for(int i = 0; i < selected.size(); i++) {
+            if(i > 0)
+                snapshot.append(',');
+            snapshot.append(cache.get(selected.get(i)));
+        }
+        snapshot.append(']');
+        return snapshot.toString();
+    }
+
+}
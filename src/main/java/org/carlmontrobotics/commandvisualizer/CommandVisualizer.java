@@ -1,37 +1,99 @@
 package org.carlmontrobotics.commandvisualizer;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
-import java.util.Objects;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.function.Consumer;
 
 import org.carlmontrobotics.lib199.Lib199Subsystem;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-
 import edu.wpi.first.networktables.NetworkTableEntry;
 import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.networktables.PubSubOption;
+import edu.wpi.first.networktables.StringPublisher;
+import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.CommandScheduler;
 
 public class CommandVisualizer {
 
     public static final String NT_KEY = "CommandDescriptors";
+    // Deltas are only useful if every one is received, so NT subscribers should use the sendAll option
+    public static final String DELTA_NT_KEY = "CommandDescriptorDeltas";
+    // Clients set this to true to request a keyframe after detecting a gap in the delta sequence
+    public static final String KEYFRAME_REQUEST_NT_KEY = "CommandDescriptorKeyframeRequest";
+    public static final String BINARY_NT_KEY = "CommandDescriptorsBinary";
+    public static final String STRING_TABLE_NT_KEY = "CommandDescriptorStrings";
+    public static final String EVENT_NT_KEY = "CommandEvents";
+    // The subtable under which metrics are published while enabled, see enableMetrics
+    public static final String METRICS_NT_TABLE = "CommandVisualizer/Metrics";
+    // How many generations (i.e. described snapshots, not ticks) a descriptor is kept after its command was last
+    // described while retention is bounded
+    private static final int DESCRIPTOR_RETENTION_GENERATIONS = 50;
 
-    private static Set<Consumer<String>> loggers = new HashSet<>();
+    // Loggers may be called from the async publisher thread while new ones are registered
+    private static Set<Consumer<String>> loggers = new CopyOnWriteArraySet<>();
+    private static Set<Consumer<String>> deltaLoggers = new CopyOnWriteArraySet<>();
+    private static Set<Consumer<byte[]>> binaryLoggers = new CopyOnWriteArraySet<>();
+    private static Set<Consumer<byte[]>> stringTableLoggers = new CopyOnWriteArraySet<>();
+    private static Set<CommandEventListener> eventListeners = new CopyOnWriteArraySet<>();
+    private static Set<Consumer<String>> eventLoggers = new CopyOnWriteArraySet<>();
+    private static Set<Consumer<CommandDescriptor[]>> descriptorListeners = new CopyOnWriteArraySet<>();
+    private static Map<CommandFilter, CommandSubscription> subscriptions = new ConcurrentHashMap<>();
     private static Set<Command> runningCommands = new HashSet<>();
+    private static Set<Command> runningCommandsView = Collections.unmodifiableSet(runningCommands);
     private static Set<Command> allCommands = Collections.newSetFromMap(new WeakHashMap<>());
+    // Commands in allCommands that are not running, oldest first. Only tracked while retention is bounded, since it
+    // holds strong references.
+    private static LinkedHashMap<Command, Double> idleCommands = new LinkedHashMap<>();
+    private static double finishedRetention = Double.POSITIVE_INFINITY;
+    private static int maxIdleCommands = Integer.MAX_VALUE;
+    private static boolean retentionChanged = false;
+    private static long lastSweepGeneration = 0;
     private static boolean disabled = false;
+    private static CommandDescriptorWriter writer = new CommandDescriptorWriter();
+    private static CommandJsonCache jsonCache = new CommandJsonCache(writer);
+    private static CommandDeltaTracker deltaTracker = new CommandDeltaTracker();
+    private static CommandDescriptorBinaryWriter binaryWriter = new CommandDescriptorBinaryWriter();
+    // Events are written on the robot loop thread, which may run concurrently with the async publisher
+    private static CommandDescriptorWriter eventWriter = new CommandDescriptorWriter();
+    private static volatile boolean stringTableRequested = false;
+    private static volatile int keyframeInterval = 50;
+    private static int publishesSinceKeyframe = 0;
+    private static volatile boolean keyframeRequested = true;
+    private static boolean publishingKeyframe = false;
+    private static CommandDeltaTracker publishingTracker = null;
+    private static volatile AsyncCommandPublisher asyncPublisher = null;
+    private static int snapshotInterval = 1;
+    private static int ticksSinceSnapshot = 0;
 
     static {
+        // Eviction runs even on ticks that publish nothing, e.g. while disabled, so idle commands are never pinned
+        Lib199Subsystem.registerPeriodic(CommandVisualizer::evictIdleCommands);
         Lib199Subsystem.registerPeriodic(CommandVisualizer::logCommands);
+        Lib199Subsystem.registerPeriodic(CommandMetrics::publishPeriodically);
         CommandScheduler.getInstance().onCommandInitialize(allCommands::add);
         CommandScheduler.getInstance().onCommandInitialize(runningCommands::add);
         CommandScheduler.getInstance().onCommandFinish(runningCommands::remove);
         CommandScheduler.getInstance().onCommandInterrupt(runningCommands::remove);
+        CommandScheduler.getInstance().onCommandInitialize(idleCommands::remove);
+        CommandScheduler.getInstance().onCommandFinish(CommandVisualizer::onCommandIdle);
+        CommandScheduler.getInstance().onCommandInterrupt(CommandVisualizer::onCommandIdle);
+        CommandScheduler.getInstance()
+                .onCommandInitialize(command -> dispatchEvent(CommandEvent.Type.INITIALIZE, command));
+        CommandScheduler.getInstance().onCommandFinish(command -> dispatchEvent(CommandEvent.Type.FINISH, command));
+        CommandScheduler.getInstance()
+                .onCommandInterrupt(command -> dispatchEvent(CommandEvent.Type.INTERRUPT, command));
     }
 
     public static void registerLogger(Consumer<String> logger) {
@@ -43,18 +105,437 @@ public class CommandVisualizer {
         registerLogger(entry::setString);
     }
 
+    /**
+     * Registers a logger that only receives the top-level commands that match a filter, see {@link CommandFilter}.
+     * Loggers registered with the same filter instance share the work of selecting the commands and building the
+     * payload, and each command is encoded at most once per tick however many filters include it.
+     */
+    public static void registerLogger(CommandFilter filter, Consumer<String> logger) {
+        // Registered inside compute so that a concurrent unregister cannot drop the subscription meanwhile
+        subscriptions.compute(filter, (key, subscription) -> {
+            if (subscription == null)
+                subscription = new CommandSubscription(key);
+            subscription.loggers.add(logger);
+            return subscription;
+        });
+    }
+
+    /**
+     * Unregisters a logger, whether or not it was registered with a filter. Filters that are left without loggers
+     * are dropped, so their commands are no longer selected and encoded.
+     */
+    public static void unregisterLogger(Consumer<String> logger) {
+        loggers.remove(logger);
+        removeFromSubscriptions(logger);
+        CommandMetrics.forgetLogger(logger);
+    }
+
+    /**
+     * Registers a logger that receives {@link CommandDescriptorDelta} JSON instead of full snapshots. Nothing is
+     * logged on ticks where no descriptor changed.
+     */
+    public static void registerDeltaLogger(Consumer<String> logger) {
+        addDeltaLogger(null, logger);
+        requestKeyframe();
+    }
+
+    /**
+     * Registers a delta logger that only receives the top-level commands that match a filter. Commands that stop
+     * matching are reported as removed. See {@link #registerLogger(CommandFilter, Consumer)}.
+     */
+    public static void registerDeltaLogger(CommandFilter filter, Consumer<String> logger) {
+        addDeltaLogger(filter, logger);
+        requestKeyframe();
+    }
+
+    /**
+     * Registers a delta logger, optionally filtered, without making every delta logger receive a keyframe. The
+     * logger must start from a keyframe of its own, see {@link #writePublishingKeyframe()}.
+     */
+    static void addDeltaLogger(CommandFilter filter, Consumer<String> logger) {
+        if (filter == null) {
+            deltaLoggers.add(logger);
+            return;
+        }
+        subscriptions.compute(filter, (key, subscription) -> {
+            if (subscription == null)
+                subscription = new CommandSubscription(key);
+            subscription.deltaLoggers.add(logger);
+            return subscription;
+        });
+    }
+
+    /**
+     * Unregisters a delta logger, whether or not it was registered with a filter. See
+     * {@link #unregisterLogger(Consumer)}.
+     */
+    public static void unregisterDeltaLogger(Consumer<String> logger) {
+        deltaLoggers.remove(logger);
+        removeFromSubscriptions(logger);
+        CommandMetrics.forgetLogger(logger);
+    }
+
+    public static void registerDefaultNTDeltaLogger() {
+        NetworkTableEntry entry = NetworkTableInstance.getDefault().getEntry(DELTA_NT_KEY);
+        NetworkTableEntry keyframeRequestEntry = NetworkTableInstance.getDefault().getEntry(KEYFRAME_REQUEST_NT_KEY);
+        keyframeRequestEntry.setBoolean(false);
+        Lib199Subsystem.registerPeriodic(() -> {
+            if (keyframeRequestEntry.getBoolean(false)) {
+                keyframeRequestEntry.setBoolean(false);
+                requestKeyframe();
+            }
+        });
+        registerDeltaLogger(entry::setString);
+    }
+
+    /**
+     * Registers a logger for the binary encoding. {@code stringTableLogger} receives the string table that the
+     * payloads refer to whenever it grows; decode both with {@link CommandDescriptor#fromBinary(byte[], String[])}.
+     */
+    public static void registerBinaryLogger(Consumer<byte[]> logger, Consumer<byte[]> stringTableLogger) {
+        binaryLoggers.add(logger);
+        stringTableLoggers.add(stringTableLogger);
+        stringTableRequested = true;
+    }
+
+    public static void registerDefaultNTBinaryLogger() {
+        NetworkTableEntry entry = NetworkTableInstance.getDefault().getEntry(BINARY_NT_KEY);
+        NetworkTableEntry stringTableEntry = NetworkTableInstance.getDefault().getEntry(STRING_TABLE_NT_KEY);
+        registerBinaryLogger(entry::setRaw, stringTableEntry::setRaw);
+    }
+
+    public static void unregisterBinaryLogger(Consumer<byte[]> logger, Consumer<byte[]> stringTableLogger) {
+        binaryLoggers.remove(logger);
+        stringTableLoggers.remove(stringTableLogger);
+        CommandMetrics.forgetLogger(logger);
+    }
+
+    /**
+     * Registers a listener that receives the described commands on the robot loop thread every time a snapshot is
+     * published. The descriptors are updated in place on later ticks, so listeners must not keep them.
+     */
+    public static void registerDescriptorListener(Consumer<CommandDescriptor[]> listener) {
+        descriptorListeners.add(listener);
+    }
+
+    public static void unregisterDescriptorListener(Consumer<CommandDescriptor[]> listener) {
+        descriptorListeners.remove(listener);
+    }
+
+    public static void registerEventListener(CommandEventListener listener) {
+        eventListeners.add(listener);
+    }
+
+    public static void unregisterEventListener(CommandEventListener listener) {
+        eventListeners.remove(listener);
+    }
+
+    /**
+     * Registers a logger that receives each {@link CommandEvent} as JSON as soon as the scheduler reports it. Pair
+     * with {@link #setSnapshotInterval(int)} to get low-latency state changes while sending full snapshots rarely.
+     */
+    public static void registerEventLogger(Consumer<String> logger) {
+        eventLoggers.add(logger);
+    }
+
+    public static void unregisterEventLogger(Consumer<String> logger) {
+        eventLoggers.remove(logger);
+        CommandMetrics.forgetLogger(logger);
+    }
+
+    public static void registerDefaultNTEventLogger() {
+        // Every event is queued rather than replaced by the next one, and queued events are sent every 20 ms instead
+        // of at NT's default 100 ms, so the robot loop never has to flush the network for them
+        StringPublisher publisher = NetworkTableInstance.getDefault().getStringTopic(EVENT_NT_KEY)
+                .publish(PubSubOption.sendAll(true), PubSubOption.periodic(0.02));
+        registerEventLogger(publisher::set);
+    }
+
+    /**
+     * Sets how many ticks of the robot loop pass between published snapshots, e.g. 50 for one snapshot a second
+     * when event loggers are used to report changes as they happen. Ticks are only counted while something is
+     * registered to receive snapshots.
+     */
+    public static void setSnapshotInterval(int ticks) {
+        snapshotInterval = ticks;
+    }
+
+    /**
+     * Stops publishing commands that finished more than the given number of seconds ago, e.g. commands bound to
+     * buttons that have not been pressed in a while. Running commands are always published, and an evicted command
+     * is published again when it next runs.
+     */
+    public static void setFinishedRetention(double seconds) {
+        finishedRetention = seconds;
+        retentionChanged = true;
+    }
+
+    /**
+     * Limits how many commands that are not running are published, evicting the ones that finished longest ago
+     * first. Evicted commands are published again when they next run.
+     */
+    public static void setMaxIdleCommands(int count) {
+        maxIdleCommands = count;
+        retentionChanged = true;
+    }
+
+    public static void requestKeyframe() {
+        keyframeRequested = true;
+    }
+
+    /**
+     * Sets how many snapshots may be published between keyframes sent to delta loggers, in addition to those sent on
+     * request. This counts publishes rather than ticks: with {@link #setSnapshotInterval(int)} above 1, or snapshots
+     * dropped by the async publisher, keyframes are further apart in time.
+     */
+    public static void setKeyframeInterval(int publishes) {
+        keyframeInterval = publishes;
+    }
+
+    /**
+     * Starts measuring the visualizer's own overhead: the time taken to describe commands (per registered class),
+     * serialize them and run each logger, the size of each payload and the number of top-level commands. The p50,
+     * p95, p99, max and mean of the last 512 samples of each are published under
+     * {@link #METRICS_NT_TABLE} once a second. Times are in microseconds and sizes are in bytes.
+     */
+    public static void enableMetrics() {
+        CommandMetrics.enabled = true;
+    }
+
+    public static void disableMetrics() {
+        CommandMetrics.enabled = false;
+    }
+
     public static void logCommands() {
-        if (disabled)
+        if (disabled || (loggers.isEmpty() && deltaLoggers.isEmpty() && binaryLoggers.isEmpty()
+                && subscriptions.isEmpty() && descriptorListeners.isEmpty()))
+            return;
+        if (++ticksSinceSnapshot < snapshotInterval)
+            return;
+        ticksSinceSnapshot = 0;
+        long start = CommandMetrics.start();
+        CommandDescriptor[] descriptors = getProcessedCommands();
+        CommandMetrics.recordTime(CommandMetrics.describeAllTime, start);
+        CommandMetrics.record(CommandMetrics.descriptorCount, descriptors.length);
+
+        for (Consumer<CommandDescriptor[]> listener : descriptorListeners) {
+            try {
+                listener.accept(descriptors);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+        if (loggers.isEmpty() && deltaLoggers.isEmpty() && binaryLoggers.isEmpty() && subscriptions.isEmpty()) {
+            CommandMetrics.recordTime(CommandMetrics.logCommandsTime, start);
+            return;
+        }
+
+        AsyncCommandPublisher publisher = asyncPublisher;
+        if (publisher != null) {
+            // Descriptors are updated in place every tick, so the publisher copies their state for its thread
+            publisher.offer(descriptors);
+        } else {
+            publish(descriptors);
+        }
+        CommandMetrics.recordTime(CommandMetrics.logCommandsTime, start);
+    }
+
+    /**
+     * Moves serialization and logging onto a background thread. The robot loop only describes the commands and
+     * copies the result; if the publisher thread falls behind, older snapshots are dropped rather than queued.
+     * Loggers are then called from the publisher thread.
+     */
+    public static synchronized void enableAsyncPublishing() {
+        if (asyncPublisher == null)
+            asyncPublisher = new AsyncCommandPublisher(CommandVisualizer::publish);
+    }
+
+    public static synchronized void disableAsyncPublishing() {
+        if (asyncPublisher != null) {
+            asyncPublisher.stop();
+            asyncPublisher = null;
+        }
+    }
+
+    /**
+     * @return whether the delta currently being passed to delta loggers is a keyframe
+     */
+    static boolean isPublishingKeyframe() {
+        return publishingKeyframe;
+    }
+
+    /**
+     * Writes a keyframe of the state that the delta currently being passed to delta loggers leads to, with the same
+     * sequence number. A logger can send it to one consumer that needs to resynchronize instead of requesting a
+     * keyframe for every delta logger. Only valid while a delta logger is being called.
+     */
+    static String writePublishingKeyframe() throws IOException {
+        return publishingTracker.writeKeyframe(writer).toString();
+    }
+
+    private static void dispatchEvent(CommandEvent.Type type, Command command) {
+        if (disabled || (eventListeners.isEmpty() && eventLoggers.isEmpty()))
             return;
+        int id = CommandDescriptorFactory.getId(command);
+        double timestamp = Timer.getFPGATimestamp();
+
+        for (CommandEventListener listener : eventListeners) {
+            listener.onCommandEvent(type, id, timestamp);
+        }
+
+        if (!eventLoggers.isEmpty()) {
+            String eventJson;
+            long start = CommandMetrics.start();
+            try {
+                eventJson = eventWriter.writeEvent(type, id, timestamp).toString();
+            } catch (Exception e) {
+                e.printStackTrace();
+                return;
+            }
+            CommandMetrics.recordTime(CommandMetrics.eventSerializeTime, start);
+            for (Consumer<String> logger : eventLoggers) {
+                long loggerStart = CommandMetrics.start();
+                logger.accept(eventJson);
+                CommandMetrics.recordLogger("Event", logger, loggerStart);
+            }
+        }
+    }
+
+    // Synchronized in case a publish on the async thread overlaps with one after switching back to synchronous mode
+    static synchronized void publish(CommandDescriptor[] descriptors) {
+        long start = CommandMetrics.start();
+        jsonCache.nextPublish();
+        if (!loggers.isEmpty())
+            publishFull(descriptors);
+        if (!deltaLoggers.isEmpty() || !subscriptions.isEmpty()) {
+            boolean keyframe = nextDeltaIsKeyframe();
+            if (!deltaLoggers.isEmpty())
+                publishDelta(Arrays.asList(descriptors), keyframe, deltaTracker, deltaLoggers, "Delta");
+            for (CommandSubscription subscription : subscriptions.values()) {
+                publishFiltered(descriptors, keyframe, subscription);
+            }
+        }
+        if (!binaryLoggers.isEmpty())
+            publishBinary(descriptors);
+        CommandMetrics.recordTime(CommandMetrics.publishTime, start);
+    }
+
+    private static void publishFull(CommandDescriptor[] descriptors) {
         String descriptorJson;
+        long start = CommandMetrics.start();
         try {
-            descriptorJson = new ObjectMapper().writeValueAsString(getProcessedCommands());
+            descriptorJson = writer.write(descriptors).toString();
         } catch (Exception e) {
             e.printStackTrace();
             return;
         }
+        CommandMetrics.recordTime(CommandMetrics.fullSerializeTime, start);
+        CommandMetrics.record(CommandMetrics.fullPayloadSize, descriptorJson.length());
         for (Consumer<String> logger : loggers) {
+            long loggerStart = CommandMetrics.start();
             logger.accept(descriptorJson);
+            CommandMetrics.recordLogger("Full", logger, loggerStart);
+        }
+    }
+
+    private static void removeFromSubscriptions(Consumer<String> logger) {
+        for (CommandFilter filter : subscriptions.keySet()) {
+            subscriptions.computeIfPresent(filter, (key, subscription) -> {
+                subscription.loggers.remove(logger);
+                subscription.deltaLoggers.remove(logger);
+                return subscription.loggers.isEmpty() && subscription.deltaLoggers.isEmpty() ? null : subscription;
+            });
+        }
+    }
+
+    private static boolean nextDeltaIsKeyframe() {
+        boolean keyframe = keyframeRequested || ++publishesSinceKeyframe >= keyframeInterval;
+        if (keyframe) {
+            // Clear the request before encoding so that one made meanwhile (e.g. by another thread) is not lost
+            keyframeRequested = false;
+            publishesSinceKeyframe = 0;
+        }
+        return keyframe;
+    }
+
+    private static void publishFiltered(CommandDescriptor[] descriptors, boolean keyframe,
+            CommandSubscription subscription) {
+        List<CommandDescriptor> selected;
+        try {
+            selected = subscription.select(descriptors);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return;
+        }
+        if (!subscription.loggers.isEmpty()) {
+            String snapshotJson;
+            long start = CommandMetrics.start();
+            try {
+                snapshotJson = subscription.writeSnapshot(selected, jsonCache);
+            } catch (Exception e) {
+                e.printStackTrace();
+                return;
+            }
+            CommandMetrics.recordTime(CommandMetrics.filteredSerializeTime, start);
+            for (Consumer<String> logger : subscription.loggers) {
+                long loggerStart = CommandMetrics.start();
+                logger.accept(snapshotJson);
+                CommandMetrics.recordLogger("Filtered", logger, loggerStart);
+            }
+        }
+        if (!subscription.deltaLoggers.isEmpty())
+            publishDelta(selected, keyframe, subscription.deltaTracker, subscription.deltaLoggers, "FilteredDelta");
+    }
+
+    private static void publishDelta(List<CommandDescriptor> descriptors, boolean keyframe,
+            CommandDeltaTracker tracker, Set<Consumer<String>> subscribers, String loggerKind) {
+        String deltaJson;
+        long start = CommandMetrics.start();
+        try {
+            CharSequence delta = tracker.nextDelta(descriptors, keyframe, jsonCache, writer);
+            deltaJson = delta == null ? null : delta.toString();
+        } catch (Exception e) {
+            e.printStackTrace();
+            if (keyframe)
+                requestKeyframe();
+            return;
+        }
+        CommandMetrics.recordTime(CommandMetrics.deltaSerializeTime, start);
+        if (deltaJson != null) {
+            CommandMetrics.record(CommandMetrics.deltaPayloadSize, deltaJson.length());
+            publishingKeyframe = keyframe;
+            publishingTracker = tracker;
+            for (Consumer<String> logger : subscribers) {
+                long loggerStart = CommandMetrics.start();
+                logger.accept(deltaJson);
+                CommandMetrics.recordLogger(loggerKind, logger, loggerStart);
+            }
+        }
+    }
+
+    private static void publishBinary(CommandDescriptor[] descriptors) {
+        byte[] payload;
+        long start = CommandMetrics.start();
+        try {
+            payload = binaryWriter.write(descriptors);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return;
+        }
+        CommandMetrics.recordTime(CommandMetrics.binarySerializeTime, start);
+        CommandMetrics.record(CommandMetrics.binaryPayloadSize, payload.length);
+        // Publish the table first so that it is never older than the payload that refers to it
+        if (stringTableRequested || binaryWriter.haveStringsChanged()) {
+            stringTableRequested = false;
+            byte[] stringTable = binaryWriter.writeStringTable();
+            for (Consumer<byte[]> logger : stringTableLoggers) {
+                logger.accept(stringTable);
+            }
+        }
+        for (Consumer<byte[]> logger : binaryLoggers) {
+            long loggerStart = CommandMetrics.start();
+            logger.accept(payload);
+            CommandMetrics.recordLogger("Binary", logger, loggerStart);
         }
     }
 
@@ -74,17 +555,77 @@ public class CommandVisualizer {
         return new ArrayList<>(runningCommands);
     }
 
+    /**
+     * Gets a read-only view of the running commands that does not copy them. It reflects later changes and must only
+     * be used from the robot loop thread.
+     */
+    public static Set<Command> getRunningCommandsView() {
+        return runningCommandsView;
+    }
+
     public static CommandDescriptor[] getProcessedCommands() {
-        return allCommands.stream().map(command -> {
+        CommandDescriptorFactory.nextGeneration();
+        CommandScheduler scheduler = CommandScheduler.getInstance();
+        ArrayList<CommandDescriptor> descriptors = new ArrayList<>(allCommands.size());
+        for (Command command : allCommands) {
+            // Composed commands are described as part of the group that contains them
+            if (scheduler.isComposed(command))
+                continue;
             try {
-                return CommandDescriptorFactory.fromCommand(command, runningCommands.contains(command));
+                descriptors.add(CommandDescriptorFactory.fromCommand(command, runningCommands.contains(command)));
             } catch (Exception e) {
                 e.printStackTrace();
-                return null;
             }
-        })
-                .filter(Objects::nonNull)
-                .toArray(CommandDescriptor[]::new);
+        }
+        return descriptors.toArray(CommandDescriptor[]::new);
+    }
+
+    private static boolean isRetentionBounded() {
+        return finishedRetention != Double.POSITIVE_INFINITY || maxIdleCommands != Integer.MAX_VALUE;
+    }
+
+    private static void onCommandIdle(Command command) {
+        if (!isRetentionBounded())
+            return;
+        // Move the command to the end of the eviction order
+        idleCommands.remove(command);
+        idleCommands.put(command, Timer.getFPGATimestamp());
+    }
+
+    private static void evictIdleCommands() {
+        if (!isRetentionBounded()) {
+            if (!idleCommands.isEmpty())
+                idleCommands.clear();
+            return;
+        }
+        double now = Timer.getFPGATimestamp();
+        if (retentionChanged) {
+            retentionChanged = false;
+            // Commands that finished before retention was bounded were not tracked, so count them from now
+            for (Command command : allCommands) {
+                if (!runningCommands.contains(command))
+                    idleCommands.putIfAbsent(command, now);
+            }
+        }
+
+        double evictBefore = now - finishedRetention;
+        Iterator<Map.Entry<Command, Double>> iterator = idleCommands.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Command, Double> entry = iterator.next();
+            // Entries are in the order the commands finished, so the rest are newer
+            if (idleCommands.size() <= maxIdleCommands && entry.getValue() >= evictBefore)
+                break;
+            allCommands.remove(entry.getKey());
+            iterator.remove();
+        }
+
+        // Evicted commands are no longer described, so their descriptors (and those of their sub commands) go stale
+        // Swept in generations like the retention itself, since generations only advance on ticks that describe
+        long generation = CommandDescriptorFactory.getGeneration();
+        if (generation - lastSweepGeneration >= DESCRIPTOR_RETENTION_GENERATIONS) {
+            lastSweepGeneration = generation;
+            CommandDescriptorFactory.evictUndescribed(DESCRIPTOR_RETENTION_GENERATIONS);
+        }
     }
 
 }
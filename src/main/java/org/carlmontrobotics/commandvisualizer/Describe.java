@@ -0,0 +1,27 @@
+package org.carlmontrobotics.commandvisualizer;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a field or a no-argument method of a command whose value should be published as a parameter. The
+ * {@code commandvisualizer-processor} annotation processor generates a {@link GeneratedDescriber} for each command
+ * class with marked members, which reads them directly rather than through reflection and is registered
+ * automatically. Marked members must not be private or static. The generated describer runs the superclass's
+ * describer first, so e.g. a {@code SequentialCommandGroup} subclass still reports its sub commands.
+ */
+@Documented
+@Retention(RetentionPolicy.CLASS)
+@Target({ ElementType.FIELD, ElementType.METHOD })
+public @interface Describe {
+
+    /**
+     * The parameter name. Defaults to the field name, or the method name without a {@code get} or {@code is}
+     * prefix.
+     */
+    public String value() default "";
+
+}
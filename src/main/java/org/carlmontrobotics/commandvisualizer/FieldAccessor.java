@@ -0,0 +1,53 @@
+package org.carlmontrobotics.commandvisualizer;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Resolves (possibly private) fields to {@link VarHandle}s, once per class and field name. Keep the handles in
+ * {@code static final} fields and read them with the exact receiver and field types, e.g.
+ * {@code (double) DURATION.get((WaitCommand) command)}, so that the JIT compiles each read down to a plain field load.
+ * Reading through a handle held in an instance field, or with other types, goes through a slower generic path.
+ */
+public final class FieldAccessor {
+
+    private static final Map<Class<?>, Map<String, VarHandle>> handles = new HashMap<>();
+
+    private FieldAccessor() {}
+
+    /**
+     * Gets the handle for the field declared by {@code clazz} with the given name.
+     *
+     * @throws WrapperException if the field does not exist or cannot be made accessible
+     */
+    public static synchronized VarHandle find(Class<?> clazz, String name) throws WrapperException {
+        Map<String, VarHandle> classHandles = handles.computeIfAbsent(clazz, c -> new HashMap<>());
+        VarHandle handle = classHandles.get(name);
+        if(handle == null) {
+            try {
+                MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(clazz, MethodHandles.lookup());
+                handle = lookup.unreflectVarHandle(clazz.getDeclaredField(name));
+            } catch(ReflectiveOperationException | SecurityException e) {
+                throw new WrapperException("Unable to access field " + clazz.getName() + "." + name, e);
+            }
+            classHandles.put(name, handle);
+        }
+        return handle;
+    }
+
+    /**
+     * Like {@link #find(Class, String)}, but reports a field that cannot be resolved and returns null instead of
+     * throwing, so that a static initializer can resolve several fields and skip only what needs the missing ones.
+     */
+    public static VarHandle findOrNull(Class<?> clazz, String name) {
+        try {
+            return find(clazz, name);
+        } catch(WrapperException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,404 @@
+package org.carlmontrobotics.commandvisualizer;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.function.Consumer;
+
+import edu.wpi.first.wpilibj.Timer;
+
+/**
+ * Records command events and periodic parameter samples into a preallocated memory-mapped file so that a match can
+ * be replayed afterwards with {@link FlightRecording}. Events and samples go into a ring of fixed-size slots, so once
+ * the ring is full the oldest records are overwritten. Writing an event or a sample does not allocate; strings and
+ * command structure are only written the first time they are seen or when they change.
+ * <p>
+ * A sample only writes the running state and parameters that changed since they were last recorded, so idle
+ * commands take up almost no slots and the ring covers far more than a match. Every value is also rewritten every
+ * {@link #REFRESH_INTERVAL} samples (10 seconds at the default sample interval) so that the state of commands that
+ * stopped changing survives the ring wrapping. Once the ring has wrapped, values that have not changed since are
+ * therefore unknown for at most that long at the start of the recording.
+ * <p>
+ * Slots refer to parameter keys by a short string index, so parameters whose key is first seen after
+ * {@link Short#MAX_VALUE} other strings are not recorded.
+ *
+ * <pre>
+ * header     := int(MAGIC) int(VERSION) int(structureCapacity) int(slotCount) int(structureSize) int(flags)
+ *               long(nextSequence), padded to HEADER_SIZE
+ * structure  := (byte(TAG_STRING) short(utf8Length) utf8
+ *               | byte(TAG_STRUCTURE) double(timestamp) int(id) int(name) int(clazz) int(childCount) int(childId)*)*
+ * slot       := long(sequence) double(timestamp) int(id) short(key) byte(type) byte(valueKind) long(value)
+ * </pre>
+ *
+ * Strings are referred to by the order in which they were written. A slot with sequence 0 has never been written.
+ * A slot's value holds the bits of a double, except for {@link #VALUE_LONG} where it is the long itself. Version 1
+ * recordings only differ in not having {@link #VALUE_LONG}.
+ */
+public class FlightRecorder implements CommandEventListener {
+
+    public static final String DEFAULT_PATH = "/home/lvuser/commandvisualizer.rec";
+    public static final int DEFAULT_FILE_SIZE = 16 * 1024 * 1024;
+    public static final int DEFAULT_STRUCTURE_CAPACITY = 1024 * 1024;
+    public static final int DEFAULT_SAMPLE_INTERVAL = 5;
+    // The number of samples after which unchanged values are recorded again
+    public static final int REFRESH_INTERVAL = 100;
+
+    static final int MAGIC = 0x43564652; // "CVFR"
+    static final int VERSION = 2;
+    static final int HEADER_SIZE = 64;
+    static final int SLOT_SIZE = 32;
+
+    static final int HEADER_STRUCTURE_CAPACITY = 8, HEADER_SLOT_COUNT = 12, HEADER_STRUCTURE_SIZE = 16,
+            HEADER_FLAGS = 20, HEADER_NEXT_SEQUENCE = 24;
+    static final int FLAG_STRUCTURE_FULL = 1;
+
+    static final byte TAG_STRING = 1, TAG_STRUCTURE = 2;
+
+    static final byte TYPE_INITIALIZE = 1, TYPE_FINISH = 2, TYPE_INTERRUPT = 3, TYPE_RUNNING = 4,
+            TYPE_PARAMETER = 5;
+    static final byte VALUE_DOUBLE = 0, VALUE_BOOLEAN = 1, VALUE_LONG = 2;
+
+    private final MappedByteBuffer buffer;
+    private final int structureCapacity;
+    private final int slotCount;
+    private final int sampleInterval;
+    // Kept so that close() can unregister it
+    private final Consumer<CommandDescriptor[]> descriptorListener = this::sample;
+
+    private final Map<String, Integer> stringIndices = new HashMap<>();
+    // Weakly keyed like the factory's descriptors, so the state of an evicted descriptor is dropped with it
+    private final Map<CommandDescriptor, RecordedState> recordedStates = new WeakHashMap<>();
+    private int structureSize = 0;
+    private long nextSequence = 1;
+    private int ticksSinceSample = 0;
+    private int sampleGeneration = 0;
+    private boolean closed = false;
+
+    // What was last recorded for a command. Parameters are indexed by their slot.
+    private static class RecordedState {
+        int sampledGeneration;
+        int refreshedGeneration;
+        CommandStructure structure;
+        int[] children;
+        int isRunning = -1;
+        String[] keys = new String[4];
+        byte[] valueKinds = new byte[4];
+        long[] values = new long[4];
+    }
+
+    private FlightRecorder(MappedByteBuffer buffer, int structureCapacity, int slotCount, int sampleInterval) {
+        this.buffer = buffer;
+        this.structureCapacity = structureCapacity;
+        this.slotCount = slotCount;
+        this.sampleInterval = sampleInterval;
+
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(HEADER_STRUCTURE_CAPACITY, structureCapacity);
+        buffer.putInt(HEADER_SLOT_COUNT, slotCount);
+        buffer.putInt(HEADER_STRUCTURE_SIZE, 0);
+        buffer.putInt(HEADER_FLAGS, 0);
+        buffer.putLong(HEADER_NEXT_SEQUENCE, nextSequence);
+    }
+
+    public static FlightRecorder start() throws IOException {
+        return start(Paths.get(DEFAULT_PATH), DEFAULT_FILE_SIZE, DEFAULT_SAMPLE_INTERVAL);
+    }
+
+    /**
+     * Starts recording to a new file and registers the recorder with {@link CommandVisualizer}. An existing
+     * recording at the same path is kept with a {@code .prev} suffix so that restarting robot code after a match
+     * does not lose it.
+     *
+     * @param sampleInterval the number of published snapshots between parameter samples
+     */
+    public static FlightRecorder start(Path path, int fileSize, int sampleInterval) throws IOException {
+        FlightRecorder recorder = open(path, fileSize, sampleInterval);
+        CommandVisualizer.registerEventListener(recorder);
+        CommandVisualizer.registerDescriptorListener(recorder.descriptorListener);
+        return recorder;
+    }
+
+    // Creates a recorder without registering it, so that tests can feed it descriptors and events directly
+    static FlightRecorder open(Path path, int fileSize, int sampleInterval) throws IOException {
+        int structureCapacity = Math.min(DEFAULT_STRUCTURE_CAPACITY, fileSize / 8);
+        int slotCount = (fileSize - HEADER_SIZE - structureCapacity) / SLOT_SIZE;
+        if(slotCount <= 0)
+            throw new IllegalArgumentException("File size " + fileSize + " is too small for a flight recording");
+
+        if(Files.exists(path))
+            Files.move(path, path.resolveSibling(path.getFileName() + ".prev"), StandardCopyOption.REPLACE_EXISTING);
+
+        MappedByteBuffer buffer;
+        try(RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.setLength(fileSize);
+            buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+        }
+        // Fault the pages in now rather than on the robot loop
+        buffer.load();
+
+        return new FlightRecorder(buffer, structureCapacity, slotCount, sampleInterval);
+    }
+
+    @Override
+    public void onCommandEvent(CommandEvent.Type type, int id, double timestamp) {
+        if(closed)
+            return;
+        byte slotType;
+        switch(type) {
+            case INITIALIZE:
+                slotType = TYPE_INITIALIZE;
+                break;
+            case FINISH:
+                slotType = TYPE_FINISH;
+                break;
+            default:
+                slotType = TYPE_INTERRUPT;
+                break;
+        }
+        writeSlot(timestamp, id, -1, slotType, VALUE_DOUBLE, 0);
+    }
+
+    void sample(CommandDescriptor[] descriptors) {
+        if(++ticksSinceSample < sampleInterval)
+            return;
+        ticksSinceSample = 0;
+        sample(descriptors, Timer.getFPGATimestamp());
+    }
+
+    void sample(CommandDescriptor[] descriptors, double timestamp) {
+        if(closed)
+            return;
+        sampleGeneration++;
+        for(CommandDescriptor descriptor : descriptors)
+            sample(descriptor, timestamp);
+    }
+
+    /**
+     * Flushes the recording to disk. The operating system writes it back eventually without this, but this makes
+     * sure that it survives e.g. a power loss.
+     */
+    public void force() {
+        if(!closed)
+            buffer.force();
+    }
+
+    /**
+     * Stops recording, flushes the recording to disk and unmaps the file. Like recording itself, this must be
+     * called on the robot loop thread, since the buffer cannot be touched once it is unmapped.
+     */
+    public void close() {
+        if(closed)
+            return;
+        CommandVisualizer.unregisterEventListener(this);
+        CommandVisualizer.unregisterDescriptorListener(descriptorListener);
+        buffer.force();
+        closed = true;
+        recordedStates.clear();
+        unmap(buffer);
+    }
+
+    // Releases the mapping now rather than whenever the buffer is garbage collected, which keeps the file mapped
+    // (and, on Windows, locked) until then
+    private static void unmap(MappedByteBuffer buffer) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field unsafe = unsafeClass.getDeclaredField("theUnsafe");
+            unsafe.setAccessible(true);
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            invokeCleaner.invoke(unsafe.get(null), buffer);
+        } catch(ReflectiveOperationException | RuntimeException e) {
+            // The mapping is released when the buffer is collected instead
+            e.printStackTrace();
+        }
+    }
+
+    private void sample(CommandDescriptor descriptor, double timestamp) {
+        RecordedState state = recordedStates.get(descriptor);
+        boolean refresh = state == null || sampleGeneration - state.refreshedGeneration >= REFRESH_INTERVAL;
+        if(state == null) {
+            state = new RecordedState();
+            recordedStates.put(descriptor, state);
+        } else if(state.sampledGeneration == sampleGeneration) {
+            // Shared sub commands are only sampled once
+            return;
+        }
+        state.sampledGeneration = sampleGeneration;
+        if(refresh)
+            state.refreshedGeneration = sampleGeneration;
+
+        if(hasStructureChanged(state, descriptor))
+            writeStructure(state, descriptor, timestamp);
+
+        int isRunning = descriptor.isRunning ? 1 : 0;
+        if(refresh || state.isRunning != isRunning) {
+            writeSlot(timestamp, descriptor.id, -1, TYPE_RUNNING, VALUE_BOOLEAN, doubleBits(isRunning));
+            state.isRunning = isRunning;
+        }
+        CommandParameters parameters = descriptor.parameters;
+        for(int i = 0; i < parameters.size(); i++) {
+            switch(parameters.getKind(i)) {
+                case CommandParameters.DOUBLE:
+                    sampleParameter(state, refresh, timestamp, descriptor.id, i, parameters.getKey(i), VALUE_DOUBLE,
+                            doubleBits(parameters.getDouble(i)));
+                    break;
+                case CommandParameters.LONG:
+                    sampleParameter(state, refresh, timestamp, descriptor.id, i, parameters.getKey(i), VALUE_LONG,
+                            parameters.getLong(i));
+                    break;
+                case CommandParameters.BOOLEAN:
+                    sampleParameter(state, refresh, timestamp, descriptor.id, i, parameters.getKey(i),
+                            VALUE_BOOLEAN, doubleBits(parameters.getBoolean(i) ? 1 : 0));
+                    break;
+                default:
+                    Object value = parameters.getObject(i);
+                    if(value instanceof Long || value instanceof Integer || value instanceof Short
+                            || value instanceof Byte)
+                        sampleParameter(state, refresh, timestamp, descriptor.id, i, parameters.getKey(i),
+                                VALUE_LONG, ((Number) value).longValue());
+                    else if(value instanceof Number)
+                        sampleParameter(state, refresh, timestamp, descriptor.id, i, parameters.getKey(i),
+                                VALUE_DOUBLE, doubleBits(((Number) value).doubleValue()));
+                    else if(value instanceof Boolean)
+                        sampleParameter(state, refresh, timestamp, descriptor.id, i, parameters.getKey(i),
+                                VALUE_BOOLEAN, doubleBits((Boolean) value ? 1 : 0));
+                    break;
+            }
+        }
+
+        for(CommandDescriptor subCommand : descriptor.subCommands) {
+            if(subCommand != null)
+                sample(subCommand, timestamp);
+        }
+    }
+
+    // Writes a parameter if it changed since it was last recorded in the same slot
+    private void sampleParameter(RecordedState state, boolean refresh, double timestamp, int id, int slot, String key,
+            byte valueKind, long value) {
+        if(slot >= state.keys.length) {
+            int length = Math.max(state.keys.length * 2, slot + 1);
+            state.keys = Arrays.copyOf(state.keys, length);
+            state.valueKinds = Arrays.copyOf(state.valueKinds, length);
+            state.values = Arrays.copyOf(state.values, length);
+        }
+        if(!refresh && key.equals(state.keys[slot]) && state.valueKinds[slot] == valueKind
+                && state.values[slot] == value)
+            return;
+        // Keys that do not fit in a slot, or that no longer fit in the structure, cannot be recorded
+        int keyIndex = intern(key);
+        if(keyIndex < 0 || keyIndex > Short.MAX_VALUE)
+            return;
+        state.keys[slot] = key;
+        state.valueKinds[slot] = valueKind;
+        state.values[slot] = value;
+        writeSlot(timestamp, id, keyIndex, TYPE_PARAMETER, valueKind, value);
+    }
+
+    private void writeSlot(double timestamp, int id, int key, byte type, byte valueKind, long value) {
+        int offset = HEADER_SIZE + structureCapacity + (int) ((nextSequence - 1) % slotCount) * SLOT_SIZE;
+        // Mark the slot as unwritten until it is complete
+        buffer.putLong(offset, 0);
+        buffer.putDouble(offset + 8, timestamp);
+        buffer.putInt(offset + 16, id);
+        buffer.putShort(offset + 20, (short) key);
+        buffer.put(offset + 22, type);
+        buffer.put(offset + 23, valueKind);
+        buffer.putLong(offset + 24, value);
+        buffer.putLong(offset, nextSequence);
+        nextSequence++;
+        buffer.putLong(HEADER_NEXT_SEQUENCE, nextSequence);
+    }
+
+    private static boolean hasStructureChanged(RecordedState state, CommandDescriptor descriptor) {
+        int[] children = state.children;
+        if(children == null || state.structure != descriptor.structure
+                || children.length != descriptor.subCommands.length)
+            return true;
+        for(int i = 0; i < children.length; i++) {
+            if(children[i] != childId(descriptor.subCommands[i]))
+                return true;
+        }
+        return false;
+    }
+
+    private void writeStructure(RecordedState state, CommandDescriptor descriptor, double timestamp) {
+        int[] children = new int[descriptor.subCommands.length];
+        for(int i = 0; i < children.length; i++)
+            children[i] = childId(descriptor.subCommands[i]);
+        state.children = children;
+        state.structure = descriptor.structure;
+
+        int name = intern(descriptor.name);
+        int clazz = intern(descriptor.clazz);
+        int size = 1 + 8 + 4 * 4 + 4 * children.length;
+        if(!reserveStructure(size))
+            return;
+        int offset = HEADER_SIZE + structureSize;
+        buffer.put(offset, TAG_STRUCTURE);
+        buffer.putDouble(offset + 1, timestamp);
+        buffer.putInt(offset + 9, descriptor.id);
+        buffer.putInt(offset + 13, name);
+        buffer.putInt(offset + 17, clazz);
+        buffer.putInt(offset + 21, children.length);
+        for(int i = 0; i < children.length; i++)
+            buffer.putInt(offset + 25 + 4 * i, children[i]);
+        commitStructure(size);
+    }
+
+    private int intern(String string) {
+        if(string == null)
+            return -1;
+        Integer index = stringIndices.get(string);
+        if(index != null)
+            return index;
+
+        byte[] utf8 = string.getBytes(StandardCharsets.UTF_8);
+        int size = 1 + 2 + utf8.length;
+        if(utf8.length > Short.MAX_VALUE || !reserveStructure(size))
+            return -1;
+        int offset = HEADER_SIZE + structureSize;
+        buffer.put(offset, TAG_STRING);
+        buffer.putShort(offset + 1, (short) utf8.length);
+        for(int i = 0; i < utf8.length; i++)
+            buffer.put(offset + 3 + i, utf8[i]);
+        commitStructure(size);
+
+        index = stringIndices.size();
+        stringIndices.put(string, index);
+        return index;
+    }
+
+    private boolean reserveStructure(int size) {
+        if(structureSize + size <= structureCapacity)
+            return true;
+        buffer.putInt(HEADER_FLAGS, buffer.getInt(HEADER_FLAGS) | FLAG_STRUCTURE_FULL);
+        return false;
+    }
+
+    private void commitStructure(int size) {
+        structureSize += size;
+        buffer.putInt(HEADER_STRUCTURE_SIZE, structureSize);
+    }
+
+    private static long doubleBits(double value) {
+        return Double.doubleToLongBits(value);
+    }
+
+    private static int childId(CommandDescriptor subCommand) {
+        return subCommand == null ? -1 : subCommand.id;
+    }
+
+}
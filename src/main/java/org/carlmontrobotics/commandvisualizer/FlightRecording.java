@@ -0,0 +1,231 @@
+package org.carlmontrobotics.commandvisualizer;
+
+import static org.carlmontrobotics.commandvisualizer.FlightRecorder.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reads a file written by {@link FlightRecorder} so that the recorded command tree can be rebuilt at any point in
+ * the recording. This is meant to be used offline, e.g. by the visualizer client, not on the robot.
+ */
+public class FlightRecording {
+
+    private static class Structure {
+        double timestamp;
+        String name, clazz;
+        int[] children;
+    }
+
+    private static class Slot {
+        long sequence;
+        double timestamp;
+        int id, key;
+        byte type, valueKind;
+        // The bits of a double, or a long for VALUE_LONG
+        long value;
+
+        double doubleValue() {
+            return Double.longBitsToDouble(value);
+        }
+    }
+
+    private final List<String> strings = new ArrayList<>();
+    // Structures for each id in the order they were recorded
+    private final Map<Integer, List<Structure>> structures = new LinkedHashMap<>();
+    // Slots in the order they were written
+    private final List<Slot> slots = new ArrayList<>();
+    private boolean isStructureTruncated;
+
+    private FlightRecording() {}
+
+    public static FlightRecording read(Path path) throws IOException {
+        ByteBuffer buffer;
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if(buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC)
+            throw new IOException(path + " is not a command flight recording");
+        int version = buffer.getInt(4);
+        if(version < 1 || version > VERSION)
+            throw new IOException("Unsupported flight recording version " + version);
+
+        FlightRecording recording = new FlightRecording();
+        int structureCapacity = buffer.getInt(HEADER_STRUCTURE_CAPACITY);
+        recording.readStructure(buffer, buffer.getInt(HEADER_STRUCTURE_SIZE));
+        recording.readSlots(buffer, HEADER_SIZE + structureCapacity, buffer.getInt(HEADER_SLOT_COUNT));
+        recording.isStructureTruncated = (buffer.getInt(HEADER_FLAGS) & FLAG_STRUCTURE_FULL) != 0;
+        return recording;
+    }
+
+    /**
+     * @return whether the recorder ran out of space for command structure, in which case commands that first
+     *         appeared late in the recording may be missing
+     */
+    public boolean isStructureTruncated() {
+        return isStructureTruncated;
+    }
+
+    public double getStartTime() {
+        return slots.isEmpty() ? 0 : slots.get(0).timestamp;
+    }
+
+    public double getEndTime() {
+        return slots.isEmpty() ? 0 : slots.get(slots.size() - 1).timestamp;
+    }
+
+    /**
+     * Rebuilds the top-level command descriptors as they were at the given FPGA timestamp, using the most recent
+     * event or sample at or before that time for each command. Commands that were first recorded after that time
+     * are left out.
+     */
+    public CommandDescriptor[] getCommandsAt(double timestamp) {
+        Map<Integer, CommandDescriptor> descriptors = new HashMap<>();
+        Map<Integer, Structure> currentStructures = new HashMap<>();
+        for(Map.Entry<Integer, List<Structure>> entry : structures.entrySet()) {
+            Structure structure = structureAt(entry.getValue(), timestamp);
+            if(structure == null)
+                continue;
+            currentStructures.put(entry.getKey(), structure);
+            CommandDescriptor descriptor = new CommandDescriptor();
+            descriptor.id = entry.getKey();
+            descriptor.name = structure.name;
+            descriptor.clazz = structure.clazz;
+            descriptors.put(descriptor.id, descriptor);
+        }
+
+        for(Slot slot : slots) {
+            if(slot.timestamp > timestamp)
+                break;
+            CommandDescriptor descriptor = descriptors.get(slot.id);
+            if(descriptor == null)
+                continue;
+            switch(slot.type) {
+                case TYPE_INITIALIZE:
+                    descriptor.isRunning = true;
+                    break;
+                case TYPE_FINISH:
+                case TYPE_INTERRUPT:
+                    descriptor.isRunning = false;
+                    break;
+                case TYPE_RUNNING:
+                    descriptor.isRunning = slot.doubleValue() != 0;
+                    break;
+                case TYPE_PARAMETER:
+                    if(slot.key >= 0 && slot.key < strings.size())
+                        descriptor.parameters.put(strings.get(slot.key), parameterValue(slot));
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        Set<Integer> childIds = new HashSet<>();
+        for(Map.Entry<Integer, Structure> entry : currentStructures.entrySet()) {
+            int[] children = entry.getValue().children;
+            CommandDescriptor descriptor = descriptors.get(entry.getKey());
+            descriptor.subCommands = new CommandDescriptor[children.length];
+            for(int i = 0; i < children.length; i++) {
+                descriptor.subCommands[i] = descriptors.get(children[i]);
+                childIds.add(children[i]);
+            }
+            descriptor.isComposed = false;
+        }
+
+        ArrayList<CommandDescriptor> roots = new ArrayList<>();
+        for(CommandDescriptor descriptor : descriptors.values()) {
+            if(childIds.contains(descriptor.id))
+                descriptor.isComposed = true;
+            else
+                roots.add(descriptor);
+        }
+        roots.sort(Comparator.comparingInt(descriptor -> descriptor.id));
+        return roots.toArray(CommandDescriptor[]::new);
+    }
+
+    private static Object parameterValue(Slot slot) {
+        switch(slot.valueKind) {
+            case VALUE_BOOLEAN:
+                return slot.doubleValue() != 0;
+            case VALUE_LONG:
+                return slot.value;
+            default:
+                return slot.doubleValue();
+        }
+    }
+
+    // The latest structure recorded at or before the timestamp, or null if the command was first recorded later
+    private static Structure structureAt(List<Structure> history, double timestamp) {
+        Structure result = null;
+        for(Structure structure : history) {
+            if(structure.timestamp > timestamp)
+                break;
+            result = structure;
+        }
+        return result;
+    }
+
+    private void readStructure(ByteBuffer buffer, int size) {
+        int offset = HEADER_SIZE;
+        int end = HEADER_SIZE + size;
+        while(offset < end) {
+            byte tag = buffer.get(offset);
+            if(tag == TAG_STRING) {
+                byte[] utf8 = new byte[buffer.getShort(offset + 1)];
+                for(int i = 0; i < utf8.length; i++)
+                    utf8[i] = buffer.get(offset + 3 + i);
+                strings.add(new String(utf8, StandardCharsets.UTF_8));
+                offset += 3 + utf8.length;
+            } else if(tag == TAG_STRUCTURE) {
+                Structure structure = new Structure();
+                structure.timestamp = buffer.getDouble(offset + 1);
+                int id = buffer.getInt(offset + 9);
+                structure.name = string(buffer.getInt(offset + 13));
+                structure.clazz = string(buffer.getInt(offset + 17));
+                structure.children = new int[buffer.getInt(offset + 21)];
+                for(int i = 0; i < structure.children.length; i++)
+                    structure.children[i] = buffer.getInt(offset + 25 + 4 * i);
+                structures.computeIfAbsent(id, key -> new ArrayList<>()).add(structure);
+                offset += 25 + 4 * structure.children.length;
+            } else {
+                throw new WrapperException("Corrupt flight recording structure at offset " + offset);
+            }
+        }
+    }
+
+    private void readSlots(ByteBuffer buffer, int start, int slotCount) {
+        for(int i = 0; i < slotCount; i++) {
+            int offset = start + i * SLOT_SIZE;
+            long sequence = buffer.getLong(offset);
+            if(sequence == 0)
+                continue;
+            Slot slot = new Slot();
+            slot.sequence = sequence;
+            slot.timestamp = buffer.getDouble(offset + 8);
+            slot.id = buffer.getInt(offset + 16);
+            slot.key = buffer.getShort(offset + 20);
+            slot.type = buffer.get(offset + 22);
+            slot.valueKind = buffer.get(offset + 23);
+            slot.value = buffer.getLong(offset + 24);
+            slots.add(slot);
+        }
+        slots.sort(Comparator.comparingLong(slot -> slot.sequence));
+    }
+
+    private String string(int index) {
+        return index >= 0 && index < strings.size() ? strings.get(index) : null;
+    }
+
+}
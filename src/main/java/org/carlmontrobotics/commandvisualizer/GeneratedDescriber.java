@@ -0,0 +1,13 @@
+package org.carlmontrobotics.commandvisualizer;
+
+import edu.wpi.first.wpilibj2.command.Command;
+
+/**
+ * A describer generated from {@link Describe} annotations. Implementations are listed in
+ * {@code META-INF/services} and registered by {@link CommandDescriptorFactory} when it loads.
+ */
+public interface GeneratedDescriber<T extends Command> extends CommandDescriber<T> {
+
+    public Class<T> getCommandClass();
+
+}
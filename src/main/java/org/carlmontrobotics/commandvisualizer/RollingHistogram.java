@@ -0,0 +1,82 @@
+package org.carlmontrobotics.commandvisualizer;
+
+import java.util.Arrays;
+
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableEntry;
+
+// Keeps the most recent samples in a preallocated ring so that recording never allocates. Samples may be recorded
+// from the robot loop and the async publisher thread while the robot loop publishes, hence the locking.
+class RollingHistogram {
+
+    final String name;
+    // Multiplied into published values, e.g. to convert nanoseconds to microseconds
+    private final double scale;
+    private final long[] samples;
+    private final long[] sorted;
+    private int next = 0;
+    private int count = 0;
+    private boolean closed = false;
+    private NetworkTableEntry p50Entry, p95Entry, p99Entry, maxEntry, meanEntry;
+
+    RollingHistogram(String name, int capacity, double scale) {
+        this.name = name;
+        this.scale = scale;
+        samples = new long[capacity];
+        sorted = new long[capacity];
+    }
+
+    synchronized void record(long value) {
+        samples[next] = value;
+        next = next + 1 == samples.length ? 0 : next + 1;
+        if(count < samples.length)
+            count++;
+    }
+
+    void publish(NetworkTable table) {
+        int n;
+        synchronized(this) {
+            n = count;
+            // Until the ring is full, the samples are at the start of the array
+            System.arraycopy(samples, 0, sorted, 0, n);
+        }
+        if(n == 0)
+            return;
+        Arrays.sort(sorted, 0, n);
+        long sum = 0;
+        for(int i = 0; i < n; i++)
+            sum += sorted[i];
+
+        // Under the lock so that a concurrent close() cannot be followed by publishing the entries again
+        synchronized(this) {
+            if(closed)
+                return;
+            if(p50Entry == null) {
+                p50Entry = table.getEntry(name + "/p50");
+                p95Entry = table.getEntry(name + "/p95");
+                p99Entry = table.getEntry(name + "/p99");
+                maxEntry = table.getEntry(name + "/max");
+                meanEntry = table.getEntry(name + "/mean");
+            }
+            p50Entry.setDouble(sorted[(n - 1) / 2] * scale);
+            p95Entry.setDouble(sorted[(int) ((n - 1) * 0.95)] * scale);
+            p99Entry.setDouble(sorted[(int) ((n - 1) * 0.99)] * scale);
+            maxEntry.setDouble(sorted[n - 1] * scale);
+            meanEntry.setDouble((double) sum / n * scale);
+        }
+    }
+
+    // Stops publishing and removes the published values, e.g. once the logger that the histogram timed is gone
+    synchronized void close() {
+        closed = true;
+        if(p50Entry == null)
+            return;
+        p50Entry.unpublish();
+        p95Entry.unpublish();
+        p99Entry.unpublish();
+        maxEntry.unpublish();
+        meanEntry.unpublish();
+        p50Entry = p95Entry = p99Entry = maxEntry = meanEntry = null;
+    }
+
+}
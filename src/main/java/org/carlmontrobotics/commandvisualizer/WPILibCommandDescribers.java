@@ -1,11 +1,10 @@
 package org.carlmontrobotics.commandvisualizer;
 
-import java.lang.reflect.Field;
+import java.lang.invoke.VarHandle;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.function.BooleanSupplier;
-import java.util.function.Predicate;
 import java.util.function.Supplier;
 
 import edu.wpi.first.wpilibj.Timer;
@@ -28,217 +27,255 @@ import edu.wpi.first.wpilibj2.command.WrapperCommand;
 @SuppressWarnings("unchecked")
 public class WPILibCommandDescribers {
 
+    // Resolved when this class loads so that a renamed WPILib field is reported here instead of failing on every
+    // tick. A field that cannot be resolved leaves its handle null and registerAll skips the describers that need it.
+    // The handles are read with exact types (see FieldAccessor) so that each read compiles to a field load.
+    private static final VarHandle conditionalCommandCondition =
+            FieldAccessor.findOrNull(ConditionalCommand.class, "m_condition");
+    private static final VarHandle conditionalCommandOnFalse =
+            FieldAccessor.findOrNull(ConditionalCommand.class, "m_onFalse");
+    private static final VarHandle conditionalCommandOnTrue =
+            FieldAccessor.findOrNull(ConditionalCommand.class, "m_onTrue");
+    private static final VarHandle notifierCommandPeriod = FieldAccessor.findOrNull(NotifierCommand.class, "m_period");
+    private static final VarHandle parallelCommandGroupCommands =
+            FieldAccessor.findOrNull(ParallelCommandGroup.class, "m_commands");
+    private static final VarHandle parallelDeadlineGroupCommands =
+            FieldAccessor.findOrNull(ParallelDeadlineGroup.class, "m_commands");
+    private static final VarHandle parallelDeadlineGroupDeadline =
+            FieldAccessor.findOrNull(ParallelDeadlineGroup.class, "m_deadline");
+    private static final VarHandle parallelRaceGroupCommands =
+            FieldAccessor.findOrNull(ParallelRaceGroup.class, "m_commands");
+    private static final VarHandle proxyCommandCommand = FieldAccessor.findOrNull(ProxyCommand.class, "m_command");
+    private static final VarHandle proxyScheduleCommandToSchedule =
+            FieldAccessor.findOrNull(ProxyScheduleCommand.class, "m_toSchedule");
+    private static final VarHandle repeatCommandCommand = FieldAccessor.findOrNull(RepeatCommand.class, "m_command");
+    private static final VarHandle scheduleCommandToSchedule =
+            FieldAccessor.findOrNull(ScheduleCommand.class, "m_toSchedule");
+    private static final VarHandle selectCommandCommands = FieldAccessor.findOrNull(SelectCommand.class, "m_commands");
+    private static final VarHandle selectCommandSelectedCommand =
+            FieldAccessor.findOrNull(SelectCommand.class, "m_selectedCommand");
+    private static final VarHandle selectCommandSelector = FieldAccessor.findOrNull(SelectCommand.class, "m_selector");
+    private static final VarHandle sequentialCommandGroupCommands =
+            FieldAccessor.findOrNull(SequentialCommandGroup.class, "m_commands");
+    private static final VarHandle sequentialCommandGroupCurrentCommandIndex =
+            FieldAccessor.findOrNull(SequentialCommandGroup.class, "m_currentCommandIndex");
+    private static final VarHandle waitCommandDuration = FieldAccessor.findOrNull(WaitCommand.class, "m_duration");
+    private static final VarHandle waitCommandTimer = FieldAccessor.findOrNull(WaitCommand.class, "m_timer");
+    private static final VarHandle waitUntilCommandCondition =
+            FieldAccessor.findOrNull(WaitUntilCommand.class, "m_condition");
+    private static final VarHandle wrapperCommandCommand = FieldAccessor.findOrNull(WrapperCommand.class, "m_command");
+
+    private static final String[] NO_VALUES = new String[0];
+
     public static final CommandDescriber<ConditionalCommand> conditionalCommandDescriber = (descriptor, command,
             isRunning) -> {
-        boolean condition = ((BooleanSupplier) getPrivateField(ConditionalCommand.class, "m_condition")
-                .get(command)).getAsBoolean();
-        descriptor.parameters.put("condition", condition);
-        descriptor.subCommands = new CommandDescriptor[2];
-        descriptor.subCommands[0] = CommandDescriptorFactory.fromCommand(
-                (Command) getPrivateField(ConditionalCommand.class, "m_onTrue").get(command),
+        boolean condition = ((BooleanSupplier) conditionalCommandCondition.get(command)).getAsBoolean();
+        descriptor.parameters.putBoolean("condition", condition);
+        CommandDescriptor[] subCommands = descriptor.subCommandSlots(2);
+        subCommands[0] = CommandDescriptorFactory.fromCommand(
+                (Command) conditionalCommandOnTrue.get(command),
                 isRunning && condition);
-        descriptor.subCommands[1] = CommandDescriptorFactory.fromCommand(
-                (Command) getPrivateField(ConditionalCommand.class, "m_onFalse").get(command),
+        subCommands[1] = CommandDescriptorFactory.fromCommand(
+                (Command) conditionalCommandOnFalse.get(command),
                 isRunning && !condition);
     };
 
     public static final CommandDescriber<NotifierCommand> notifierCommandDescriber = (descriptor, command,
             isRunning) -> {
-        descriptor.parameters.put("period",
-                getPrivateField(NotifierCommand.class, "m_period").getDouble(command));
+        descriptor.parameters.putDouble("period", (double) notifierCommandPeriod.get(command));
     };
 
     public static final CommandDescriber<ParallelCommandGroup> parallelCommandGroupDescriber = (descriptor, command,
             isRunning) -> {
-        descriptor.subCommands = ((Map<Command, Boolean>) getPrivateField(ParallelCommandGroup.class,
-                "m_commands").get(command))
-                .entrySet().stream()
-                .map(entry -> CommandDescriptorFactory
-                        .fromCommand(entry.getKey(), entry.getValue()))
-                .toArray(CommandDescriptor[]::new);
+        Map<Command, Boolean> commands = (Map<Command, Boolean>) parallelCommandGroupCommands.get(command);
+        CommandDescriptor[] subCommands = descriptor.subCommandSlots(commands.size());
+        int i = 0;
+        for (Map.Entry<Command, Boolean> entry : commands.entrySet()) {
+            subCommands[i++] = CommandDescriptorFactory.fromCommand(entry.getKey(), entry.getValue());
+        }
     };
 
     public static final CommandDescriber<ParallelDeadlineGroup> parallelDeadlineGroupDescriber = (descriptor,
             command, isRunning) -> {
-        Set<Command> subCommands = ((Map<Command, Boolean>) getPrivateField(ParallelDeadlineGroup.class,
-                "m_commands").get(command)).keySet();
+        Map<Command, Boolean> commands = (Map<Command, Boolean>) parallelDeadlineGroupCommands.get(command);
+        Command deadline = (Command) parallelDeadlineGroupDeadline.get(command);
 
-        descriptor.subCommands = new CommandDescriptor[subCommands.size()];
+        CommandDescriptor[] subCommands = descriptor.subCommandSlots(commands.size());
         // Ensure deadline is first
-        descriptor.subCommands[0] = CommandDescriptorFactory.fromCommand(
-                (Command) getPrivateField(ParallelDeadlineGroup.class, "m_deadline").get(command),
-                isRunning);
-        CommandDescriptor[] additionalSubCommands = ((Map<Command, Boolean>) getPrivateField(
-                ParallelDeadlineGroup.class, "m_commands").get(command))
-                .entrySet().stream()
-                .map(entry -> CommandDescriptorFactory
-                        .fromCommand(entry.getKey(), entry.getValue()))
-                .filter(Predicate.not(Predicate.isEqual(descriptor.subCommands[0])))
-                .toArray(CommandDescriptor[]::new);
-        System.arraycopy(additionalSubCommands, 0, descriptor.subCommands, 1, additionalSubCommands.length);
+        subCommands[0] = CommandDescriptorFactory.fromCommand(deadline, isRunning);
+        int i = 1;
+        for (Map.Entry<Command, Boolean> entry : commands.entrySet()) {
+            if (entry.getKey() != deadline)
+                subCommands[i++] = CommandDescriptorFactory.fromCommand(entry.getKey(), entry.getValue());
+        }
     };
 
     public static final CommandDescriber<ParallelRaceGroup> parallelRaceGroupDescriber = (descriptor, command,
             isRunning) -> {
-        descriptor.subCommands = ((Set<Command>) getPrivateField(ParallelRaceGroup.class, "m_commands")
-                .get(command))
-                .stream()
-                .map(subCommand -> CommandDescriptorFactory
-                        .fromCommand(command, isRunning))
-                .toArray(CommandDescriptor[]::new);
+        Set<Command> commands = (Set<Command>) parallelRaceGroupCommands.get(command);
+        CommandDescriptor[] subCommands = descriptor.subCommandSlots(commands.size());
+        int i = 0;
+        for (Command subCommand : commands) {
+            subCommands[i++] = CommandDescriptorFactory.fromCommand(subCommand, isRunning);
+        }
     };
 
     public static final CommandDescriber<ProxyCommand> proxyCommandDescriber = (descriptor, command, isRunning) -> {
         if (isRunning)
-            descriptor.subCommands = new CommandDescriptor[] {
-                    CommandDescriptorFactory.fromCommand(
-                            (Command) getPrivateField(ProxyCommand.class, "m_command")
-                                    .get(command),
-                            isRunning) };
+            descriptor.subCommandSlots(1)[0] = CommandDescriptorFactory.fromCommand(
+                    (Command) proxyCommandCommand.get(command),
+                    isRunning);
     };
 
     public static final CommandDescriber<ProxyScheduleCommand> proxyScheduleCommandDescriber = (descriptor, command,
             isRunning) -> {
-        descriptor.subCommands = ((Set<Command>) getPrivateField(ParallelRaceGroup.class, "m_toSchedule")
-                .get(command))
-                .stream()
-                .map(subCommand -> CommandDescriptorFactory
-                        .fromCommand(command,
-                                CommandVisualizer.getRunningCommands()
-                                        .contains(subCommand)))
-                .toArray(CommandDescriptor[]::new);
+        describeScheduled(descriptor, (Set<Command>) proxyScheduleCommandToSchedule.get(command));
     };
 
     public static final CommandDescriber<RepeatCommand> repeatCommandDescriber = (descriptor, command,
             isRunning) -> {
-        descriptor.subCommands = new CommandDescriptor[] {
-                CommandDescriptorFactory
-                        .fromCommand((Command) getPrivateField(RepeatCommand.class, "m_command")
-                                .get(command), isRunning) };
+        descriptor.subCommandSlots(1)[0] = CommandDescriptorFactory.fromCommand(
+                (Command) repeatCommandCommand.get(command),
+                isRunning);
     };
 
     public static final CommandDescriber<ScheduleCommand> scheduleCommandDescriber = (descriptor, command,
             isRunning) -> {
-        descriptor.subCommands = ((Set<Command>) getPrivateField(ParallelRaceGroup.class, "m_toSchedule")
-                .get(command))
-                .stream()
-                .map(subCommand -> CommandDescriptorFactory
-                        .fromCommand(command,
-                                CommandVisualizer.getRunningCommands()
-                                        .contains(subCommand)))
-                .toArray(CommandDescriptor[]::new);
+        describeScheduled(descriptor, (Set<Command>) scheduleCommandToSchedule.get(command));
     };
 
     public static final CommandDescriber<SelectCommand> selectCommandDescriber = (descriptor, command,
             isRunning) -> {
-        Object currentSelectorValue = ((Supplier<Object>) getPrivateField(SelectCommand.class, "m_selector")
-                .get(command)).get();
-        descriptor.parameters.put("currentSelectorValue",
+        Object currentSelectorValue = ((Supplier<Object>) selectCommandSelector.get(command)).get();
+        descriptor.parameters.putString("currentSelectorValue",
                 currentSelectorValue == null ? "<null>" : currentSelectorValue.toString());
 
-        Map<Object, Command> subCommands = (Map<Object, Command>) getPrivateField(SelectCommand.class,
-                "m_commands")
-                .get(command);
+        Map<Object, Command> commands = (Map<Object, Command>) selectCommandCommands.get(command);
 
-        if (subCommands == null) {
-            descriptor.parameters.put("hasSupplier", true);
-            descriptor.parameters.put("subCommandValues", new String[0]);
+        if (commands == null) {
+            descriptor.parameters.putBoolean("hasSupplier", true);
+            descriptor.parameters.put("subCommandValues", NO_VALUES);
             if (isRunning)
-                descriptor.subCommands = new CommandDescriptor[] { CommandDescriptorFactory.fromCommand(
-                        (Command) getPrivateField(SelectCommand.class, "m_selectedCommand")
-                                .get(command),
-                        true) };
+                descriptor.subCommandSlots(1)[0] = CommandDescriptorFactory.fromCommand(
+                        (Command) selectCommandSelectedCommand.get(command),
+                        true);
         } else {
-            descriptor.parameters.put("hasSupplier", false);
-            String[] subCommandValues = new String[subCommands.size()];
-            descriptor.subCommands = new CommandDescriptor[subCommands.size()];
-
-            Map.Entry<Object, Command>[] entries = subCommands.entrySet().toArray(Map.Entry[]::new);
+            descriptor.parameters.putBoolean("hasSupplier", false);
 
             if (isRunning) {
-                descriptor.subCommands[0] = CommandDescriptorFactory.fromCommand(
-                        (Command) getPrivateField(SelectCommand.class, "m_selectedCommand")
-                                .get(command),
-                        true);
+                // Found by identity, since invoking the selector again may give a different value than the one that
+                // selected the running command. A value that matches no key runs a PrintCommand instead of a branch.
+                Command selected = (Command) selectCommandSelectedCommand.get(command);
+                boolean selectedIsBranch = commands.containsValue(selected);
+                int count = selectedIsBranch ? commands.size() : commands.size() + 1;
+                String[] subCommandValues = valueSlots(descriptor, "subCommandValues", count);
+                CommandDescriptor[] subCommands = descriptor.subCommandSlots(count);
+
+                // The selected branch goes first
+                subCommands[0] = CommandDescriptorFactory.fromCommand(selected, true);
+                subCommandValues[0] = currentSelectorValue == null ? "<null>" : currentSelectorValue.toString();
+                boolean found = false;
                 int arrIdx = 1;
-                for (int i = 0; i < entries.length; i++) {
-                    if (entries[i].getKey() == currentSelectorValue) {
-                        subCommandValues[0] = entries[i].getKey().toString();
+                for (Map.Entry<Object, Command> entry : commands.entrySet()) {
+                    if (!found && entry.getValue() == selected) {
+                        found = true;
+                        subCommandValues[0] = entry.getKey().toString();
                         continue;
                     }
 
-                    subCommandValues[arrIdx] = entries[i].getKey().toString();
-                    descriptor.subCommands[arrIdx] = CommandDescriptorFactory
-                            .fromCommand(entries[i].getValue(), false);
+                    subCommandValues[arrIdx] = entry.getKey().toString();
+                    subCommands[arrIdx] = CommandDescriptorFactory.fromCommand(entry.getValue(), false);
                     arrIdx++;
                 }
             } else {
-                for (int i = 0; i < entries.length; i++) {
-                    subCommandValues[i] = entries[i].getKey().toString();
-                    descriptor.subCommands[i] = CommandDescriptorFactory
-                            .fromCommand(entries[i].getValue(), false);
+                String[] subCommandValues = valueSlots(descriptor, "subCommandValues", commands.size());
+                CommandDescriptor[] subCommands = descriptor.subCommandSlots(commands.size());
+                int i = 0;
+                for (Map.Entry<Object, Command> entry : commands.entrySet()) {
+                    subCommandValues[i] = entry.getKey().toString();
+                    subCommands[i] = CommandDescriptorFactory.fromCommand(entry.getValue(), false);
+                    i++;
                 }
             }
-
-            descriptor.parameters.put("subCommandValues", subCommandValues);
         }
     };
 
     public static final CommandDescriber<SequentialCommandGroup> sequentialCommandGroupDescriber = (descriptor,
             command, isRunning) -> {
-        int currentCommandIndex = getPrivateField(SequentialCommandGroup.class, "m_currentCommandIndex")
-                .getInt(command);
+        int currentCommandIndex = (int) sequentialCommandGroupCurrentCommandIndex.get(command);
 
-        List<Command> subCommands = ((List<Command>) getPrivateField(SequentialCommandGroup.class, "m_commands")
-                .get(command));
+        List<Command> commands = (List<Command>) sequentialCommandGroupCommands.get(command);
 
-        descriptor.subCommands = new CommandDescriptor[subCommands.size()];
-        for (int i = 0; i < subCommands.size(); i++) {
-            descriptor.subCommands[i] = CommandDescriptorFactory.fromCommand(subCommands.get(i),
+        CommandDescriptor[] subCommands = descriptor.subCommandSlots(commands.size());
+        for (int i = 0; i < commands.size(); i++) {
+            subCommands[i] = CommandDescriptorFactory.fromCommand(commands.get(i),
                     isRunning && i == currentCommandIndex);
         }
     };
 
     public static final CommandDescriber<WaitCommand> waitCommandDescriber = (descriptor, command, isRunning) -> {
-        descriptor.parameters.put("duration",
-                getPrivateField(WaitCommand.class, "m_duration").getDouble(command));
-        descriptor.parameters.put("timeElapsed",
-                ((Timer) getPrivateField(WaitCommand.class, "m_timer").get(command)).get());
+        descriptor.parameters.putDouble("duration", (double) waitCommandDuration.get(command));
+        descriptor.parameters.putDouble("timeElapsed", ((Timer) waitCommandTimer.get(command)).get());
     };
 
     public static final CommandDescriber<WaitUntilCommand> waitUntilCommandDescriber = (descriptor, command,
             isRunning) -> {
-        descriptor.parameters.put("condition",
-                ((BooleanSupplier) getPrivateField(WaitUntilCommand.class, "m_condition")
-                        .get(command)).getAsBoolean());
+        descriptor.parameters.putBoolean("condition",
+                ((BooleanSupplier) waitUntilCommandCondition.get(command)).getAsBoolean());
     };
 
     public static final CommandDescriber<WrapperCommand> wrapperCommandDescriber = (descriptor, command,
             isRunning) -> {
-        descriptor.subCommands = new CommandDescriptor[] {
-                CommandDescriptorFactory.fromCommand(
-                        (Command) getPrivateField(WrapperCommand.class, "m_command")
-                                .get(command),
-                        isRunning) };
+        descriptor.subCommandSlots(1)[0] = CommandDescriptorFactory.fromCommand(
+                (Command) wrapperCommandCommand.get(command),
+                isRunning);
     };
 
     public static void registerAll() {
-        CommandDescriptorFactory.registerDescriber(ConditionalCommand.class, conditionalCommandDescriber);
-        CommandDescriptorFactory.registerDescriber(ParallelCommandGroup.class, parallelCommandGroupDescriber);
-        CommandDescriptorFactory.registerDescriber(ParallelDeadlineGroup.class, parallelDeadlineGroupDescriber);
-        CommandDescriptorFactory.registerDescriber(ParallelRaceGroup.class, parallelRaceGroupDescriber);
-        CommandDescriptorFactory.registerDescriber(RepeatCommand.class, repeatCommandDescriber);
-        CommandDescriptorFactory.registerDescriber(ScheduleCommand.class, scheduleCommandDescriber);
-        CommandDescriptorFactory.registerDescriber(SelectCommand.class, selectCommandDescriber);
-        CommandDescriptorFactory.registerDescriber(SequentialCommandGroup.class, sequentialCommandGroupDescriber);
-        CommandDescriptorFactory.registerDescriber(WaitCommand.class, waitCommandDescriber);
-        CommandDescriptorFactory.registerDescriber(WaitUntilCommand.class, waitUntilCommandDescriber);
-        CommandDescriptorFactory.registerDescriber(WrapperCommand.class, wrapperCommandDescriber);
+        register(ConditionalCommand.class, conditionalCommandDescriber, conditionalCommandCondition,
+                conditionalCommandOnTrue, conditionalCommandOnFalse);
+        register(ParallelCommandGroup.class, parallelCommandGroupDescriber, parallelCommandGroupCommands);
+        register(ParallelDeadlineGroup.class, parallelDeadlineGroupDescriber, parallelDeadlineGroupCommands,
+                parallelDeadlineGroupDeadline);
+        register(ParallelRaceGroup.class, parallelRaceGroupDescriber, parallelRaceGroupCommands);
+        register(RepeatCommand.class, repeatCommandDescriber, repeatCommandCommand);
+        register(ScheduleCommand.class, scheduleCommandDescriber, scheduleCommandToSchedule);
+        register(SelectCommand.class, selectCommandDescriber, selectCommandCommands, selectCommandSelectedCommand,
+                selectCommandSelector);
+        register(SequentialCommandGroup.class, sequentialCommandGroupDescriber, sequentialCommandGroupCommands,
+                sequentialCommandGroupCurrentCommandIndex);
+        register(WaitCommand.class, waitCommandDescriber, waitCommandDuration, waitCommandTimer);
+        register(WaitUntilCommand.class, waitUntilCommandDescriber, waitUntilCommandCondition);
+        register(WrapperCommand.class, wrapperCommandDescriber, wrapperCommandCommand);
+    }
+
+    // Skips a describer whose fields could not be resolved (already reported when this class loaded), so that one
+    // renamed field does not stop every other command from being described
+    private static <T extends Command> void register(Class<T> clazz, CommandDescriber<T> describer,
+            VarHandle... fields) {
+        for (VarHandle field : fields) {
+            if (field == null)
+                return;
+        }
+        CommandDescriptorFactory.registerDescriber(clazz, describer);
+    }
+
+    private static void describeScheduled(CommandDescriptor descriptor, Set<Command> toSchedule) {
+        Set<Command> runningCommands = CommandVisualizer.getRunningCommandsView();
+        CommandDescriptor[] subCommands = descriptor.subCommandSlots(toSchedule.size());
+        int i = 0;
+        for (Command subCommand : toSchedule) {
+            subCommands[i++] = CommandDescriptorFactory.fromCommand(subCommand, runningCommands.contains(subCommand));
+        }
     }
 
-    private static Field getPrivateField(Class<?> clazz, String name) throws NoSuchFieldException {
-        Field field = clazz.getDeclaredField(name);
-        field.setAccessible(true);
-        return field;
+    // Reuses the String[] parameter from the previous tick when it has the right length
+    private static String[] valueSlots(CommandDescriptor descriptor, String key, int count) {
+        Object previous = descriptor.parameters.get(key);
+        if (previous instanceof String[] && ((String[]) previous).length == count)
+            return (String[]) previous;
+        String[] values = new String[count];
+        descriptor.parameters.put(key, values);
+        return values;
     }
 }
@@ -0,0 +1,105 @@
+package org.carlmontrobotics.commandvisualizer;
+
+import static org.carlmontrobotics.commandvisualizer.TestFixtures.descriptor;
+import static org.carlmontrobotics.commandvisualizer.TestFixtures.json;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+public class AsyncCommandPublisherTest {
+
+    @Test
+    public void publishesStateAsOffered() throws Exception {
+        BlockingQueue<String> published = new LinkedBlockingQueue<>();
+        AsyncCommandPublisher publisher = new AsyncCommandPublisher(descriptors -> {
+            try {
+                published.add(json(descriptors[0]));
+            } catch(Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        try {
+            CommandDescriptor drive = descriptor(0, "Drive");
+            drive.parameters.putDouble("speed", 0.5);
+            String offered = json(drive);
+            publisher.offer(new CommandDescriptor[] { drive });
+            // The robot loop moves on to the next tick while the snapshot may not have been published yet
+            drive.parameters.putDouble("speed", 0.75);
+            drive.isRunning = true;
+            assertEquals(offered, published.poll(5, TimeUnit.SECONDS));
+
+            publisher.offer(new CommandDescriptor[] { drive });
+            assertEquals(json(drive), published.poll(5, TimeUnit.SECONDS));
+            assertEquals(0, publisher.getDroppedSnapshots());
+        } finally {
+            publisher.stop();
+        }
+    }
+
+    @Test
+    public void dropsSnapshotsWhilePublisherIsBusy() throws Exception {
+        BlockingQueue<Double> published = new LinkedBlockingQueue<>();
+        CountDownLatch publishing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AsyncCommandPublisher publisher = new AsyncCommandPublisher(descriptors -> {
+            publishing.countDown();
+            try {
+                release.await();
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            published.add(descriptors[0].parameters.getDouble(0));
+        });
+        try {
+            CommandDescriptor drive = descriptor(0, "Drive");
+            CommandDescriptor[] descriptors = { drive };
+            drive.parameters.putDouble("tick", 1);
+            publisher.offer(descriptors);
+            assertTrue(publishing.await(5, TimeUnit.SECONDS));
+
+            for(int tick = 2; tick <= 4; tick++) {
+                drive.parameters.putDouble("tick", tick);
+                publisher.offer(descriptors);
+            }
+            release.countDown();
+
+            assertEquals(Double.valueOf(1), published.poll(5, TimeUnit.SECONDS));
+            // Only the latest of the snapshots offered while the publisher was busy is published
+            assertEquals(Double.valueOf(4), published.poll(5, TimeUnit.SECONDS));
+            assertNull(published.poll(100, TimeUnit.MILLISECONDS));
+            assertEquals(2, publisher.getDroppedSnapshots());
+        } finally {
+            publisher.stop();
+        }
+    }
+
+    @Test
+    public void reusesCopiesAcrossTicks() throws Exception {
+        CommandDescriptor group = descriptor(0, "Auto");
+        CommandDescriptor otherGroup = descriptor(1, "Score");
+        CommandDescriptor shared = descriptor(2, "Intake");
+        group.subCommands = new CommandDescriptor[] { shared, null };
+        otherGroup.subCommands = new CommandDescriptor[] { shared };
+        CommandDescriptor[] descriptors = { group, otherGroup };
+
+        CommandSnapshot snapshot = new CommandSnapshot();
+        snapshot.copyFrom(descriptors);
+        CommandDescriptor[] copies = snapshot.getDescriptors();
+        assertEquals(json(group), json(copies[0]));
+        assertNotSame(group, copies[0]);
+        assertSame(copies[0].subCommands[0], copies[1].subCommands[0]);
+
+        shared.isRunning = true;
+        shared.parameters.putBoolean("hasNote", true);
+        snapshot.copyFrom(descriptors);
+        assertSame(copies, snapshot.getDescriptors());
+        assertEquals(json(group), json(copies[0]));
+        assertEquals(json(otherGroup), json(copies[1]));
+    }
+
+}
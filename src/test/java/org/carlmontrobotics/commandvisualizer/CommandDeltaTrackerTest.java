@@ -0,0 +1,126 @@
+package org.carlmontrobotics.commandvisualizer;
+
+import static org.carlmontrobotics.commandvisualizer.TestFixtures.descriptor;
+import static org.carlmontrobotics.commandvisualizer.TestFixtures.json;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class CommandDeltaTrackerTest {
+
+    private CommandDescriptorWriter writer;
+    private CommandJsonCache cache;
+    private CommandDeltaTracker tracker;
+    private CommandDescriptorDeltaApplier applier;
+
+    @BeforeEach
+    public void setUp() {
+        writer = new CommandDescriptorWriter();
+        cache = new CommandJsonCache(writer);
+        tracker = new CommandDeltaTracker();
+        applier = new CommandDescriptorDeltaApplier();
+    }
+
+    // Publishes like CommandVisualizer does, returning null if nothing changed
+    private String publish(boolean keyframe, CommandDescriptor... descriptors) throws Exception {
+        cache.nextPublish();
+        CharSequence delta = tracker.nextDelta(Arrays.asList(descriptors), keyframe, cache, writer);
+        return delta == null ? null : delta.toString();
+    }
+
+    private void assertApplied(CommandDescriptor... expected) throws Exception {
+        CommandDescriptor[] actual = applier.getDescriptors();
+        assertEquals(expected.length, actual.length);
+        for(int i = 0; i < expected.length; i++)
+            assertEquals(json(expected[i]), json(actual[i]));
+    }
+
+    @Test
+    public void appliesChangesAndRemovals() throws Exception {
+        CommandDescriptor drive = descriptor(0, "Drive");
+        CommandDescriptor intake = descriptor(1, "Intake");
+        drive.parameters.putDouble("speed", 0.5);
+
+        assertTrue(applier.apply(publish(true, drive, intake)));
+        assertApplied(drive, intake);
+
+        drive.parameters.putDouble("speed", 0.75);
+        CommandDescriptorDelta delta = CommandDescriptorDelta.fromJson(publish(false, drive, intake));
+        assertFalse(delta.isKeyframe);
+        assertEquals(1, delta.changed.length);
+        assertEquals(0, delta.changed[0].id);
+        assertTrue(applier.apply(delta));
+        assertApplied(drive, intake);
+
+        CommandDescriptor shoot = descriptor(2, "Shoot");
+        delta = CommandDescriptorDelta.fromJson(publish(false, drive, shoot));
+        assertArrayEquals(new int[] { 1 }, delta.removed);
+        assertTrue(applier.apply(delta));
+        assertApplied(drive, shoot);
+        assertEquals(3, applier.getSequence());
+    }
+
+    @Test
+    public void skipsUnchangedPublishes() throws Exception {
+        CommandDescriptor drive = descriptor(0, "Drive");
+        assertNotNull(publish(false, drive));
+        assertNull(publish(false, drive));
+
+        String keyframe = publish(true, drive);
+        assertNotNull(keyframe);
+        CommandDescriptorDelta delta = CommandDescriptorDelta.fromJson(keyframe);
+        assertTrue(delta.isKeyframe);
+        assertEquals(2, delta.sequence);
+        assertEquals(1, delta.changed.length);
+    }
+
+    @Test
+    public void detectsMissedDeltas() throws Exception {
+        CommandDescriptor drive = descriptor(0, "Drive");
+        assertFalse(applier.apply(publish(false, drive)));
+        assertTrue(applier.needsKeyframe());
+
+        assertTrue(applier.apply(publish(true, drive)));
+        drive.parameters.putLong("ticks", 1);
+        publish(false, drive);
+        drive.parameters.putLong("ticks", 2);
+        String afterGap = publish(false, drive);
+
+        assertFalse(applier.apply(afterGap));
+        assertTrue(applier.needsKeyframe());
+        assertEquals(2, applier.getSequence());
+        // The state from before the gap is kept
+        assertFalse(applier.getDescriptors()[0].parameters.containsKey("ticks"));
+
+        drive.parameters.putLong("ticks", 3);
+        assertFalse(applier.apply(publish(false, drive)));
+        assertTrue(applier.apply(publish(true, drive)));
+        assertFalse(applier.needsKeyframe());
+        assertApplied(drive);
+    }
+
+    @Test
+    public void resyncsFromKeyframeOfLastPublish() throws Exception {
+        CommandDescriptor drive = descriptor(0, "Drive");
+        CommandDescriptor intake = descriptor(1, "Intake");
+        publish(true, drive, intake);
+        drive.parameters.putBoolean("fieldRelative", true);
+        publish(false, drive, intake);
+        publish(false, intake);
+
+        CommandDescriptorDelta keyframe = CommandDescriptorDelta.fromJson(tracker.writeKeyframe(writer).toString());
+        assertTrue(keyframe.isKeyframe);
+        assertEquals(3, keyframe.sequence);
+        assertEquals(0, keyframe.removed.length);
+        assertTrue(applier.apply(keyframe));
+        assertApplied(intake);
+
+        // Deltas published after the keyframe apply to it
+        assertTrue(applier.apply(publish(false, intake, drive)));
+        assertApplied(intake, drive);
+    }
+
+}
@@ -0,0 +1,151 @@
+package org.carlmontrobotics.commandvisualizer;
+
+import static org.carlmontrobotics.commandvisualizer.TestFixtures.descriptor;
+import static org.carlmontrobotics.commandvisualizer.TestFixtures.json;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+import edu.wpi.first.wpilibj2.command.Command.InterruptionBehavior;
+
+public class CommandDescriptorBinaryTest {
+
+    private static CommandDescriptor tree() {
+        CommandDescriptor root = descriptor(0, "Auto");
+        root.describer = "SequentialCommandGroupDescriber";
+        root.isRunning = true;
+        root.runsWhenDisabled = true;
+        root.interruptionBehavior = InterruptionBehavior.kCancelIncoming;
+        root.requirements = new String[] { "frc.robot.subsystems.Arm", "frc.robot.subsystems.Drivetrain" };
+        root.parameters.putDouble("timeElapsed", 1.25);
+        root.parameters.putLong("currentCommandIndex", -3);
+        root.parameters.putBoolean("hasFinished", false);
+        root.parameters.putString("selected", "Left \u2713");
+        root.parameters.put("options", new String[] { "Left \u2713", "Right" });
+        root.parameters.put("nothing", null);
+
+        CommandDescriptor child = descriptor(1, "Wait");
+        child.isComposed = true;
+        child.parameters.putDouble("duration", Double.NaN);
+        child.parameters.putLong("ticks", Long.MIN_VALUE);
+        child.parameters.putBoolean("flag", true);
+        root.subCommands = new CommandDescriptor[] { child, null };
+        return root;
+    }
+
+    @Test
+    public void roundTripsDescriptorTree() throws Exception {
+        CommandDescriptor original = tree();
+        CommandDescriptorBinaryWriter writer = new CommandDescriptorBinaryWriter();
+        byte[] payload = writer.write(new CommandDescriptor[] { original, descriptor(2, "Idle") });
+        String[] strings = CommandDescriptor.stringTableFromBinary(writer.writeStringTable());
+
+        CommandDescriptor[] decoded = CommandDescriptor.fromBinary(payload, strings);
+
+        assertEquals(2, decoded.length);
+        assertEquals(json(original), json(decoded[0]));
+        assertEquals(json(descriptor(2, "Idle")), json(decoded[1]));
+        assertEquals(InterruptionBehavior.kCancelIncoming, decoded[0].interruptionBehavior);
+        assertNull(decoded[0].subCommands[1]);
+        assertArrayEquals(new String[] { "Left \u2713", "Right" }, (String[]) decoded[0].parameters.get("options"));
+    }
+
+    @Test
+    public void decodesTypedParametersIntoTypedSlots() throws Exception {
+        CommandDescriptorBinaryWriter writer = new CommandDescriptorBinaryWriter();
+        byte[] payload = writer.write(new CommandDescriptor[] { tree() });
+        CommandParameters parameters = CommandDescriptor.fromBinary(payload,
+                CommandDescriptor.stringTableFromBinary(writer.writeStringTable()))[0].parameters;
+
+        assertEquals(CommandParameters.DOUBLE, parameters.getKind(0));
+        assertEquals(1.25, parameters.getDouble(0));
+        assertEquals(CommandParameters.LONG, parameters.getKind(1));
+        assertEquals(-3, parameters.getLong(1));
+        assertEquals(CommandParameters.BOOLEAN, parameters.getKind(2));
+        assertFalse(parameters.getBoolean(2));
+    }
+
+    @Test
+    public void onlyRepublishesStringTableWhenStringsAreAdded() throws Exception {
+        CommandDescriptorBinaryWriter writer = new CommandDescriptorBinaryWriter();
+        CommandDescriptor root = tree();
+        writer.write(new CommandDescriptor[] { root });
+        String[] strings = CommandDescriptor.stringTableFromBinary(writer.writeStringTable());
+
+        root.parameters.putDouble("timeElapsed", 2.5);
+        byte[] unchangedStrings = writer.write(new CommandDescriptor[] { root });
+        assertFalse(writer.haveStringsChanged());
+        assertEquals(2.5, CommandDescriptor.fromBinary(unchangedStrings, strings)[0].parameters.get("timeElapsed"));
+
+        root.parameters.putDouble("newKey", 1);
+        byte[] newStrings = writer.write(new CommandDescriptor[] { root });
+        assertTrue(writer.haveStringsChanged());
+        assertThrows(WrapperException.class, () -> CommandDescriptor.fromBinary(newStrings, strings));
+        String[] newTable = CommandDescriptor.stringTableFromBinary(writer.writeStringTable());
+        assertEquals(json(root), json(CommandDescriptor.fromBinary(newStrings, newTable)[0]));
+    }
+
+    @Test
+    public void rejectsOtherPayloads() {
+        assertThrows(WrapperException.class,
+                () -> CommandDescriptor.fromBinary("[]".getBytes(), new String[0]));
+    }
+
+    @Test
+    public void rejectsMalformedPayloads() throws Exception {
+        CommandDescriptorBinaryWriter writer = new CommandDescriptorBinaryWriter();
+        byte[] payload = writer.write(new CommandDescriptor[] { tree() });
+        byte[] table = writer.writeStringTable();
+        String[] strings = CommandDescriptor.stringTableFromBinary(table);
+
+        for(int length = 0; length < payload.length; length++) {
+            byte[] truncated = Arrays.copyOf(payload, length);
+            assertThrows(WrapperException.class, () -> CommandDescriptor.fromBinary(truncated, strings));
+        }
+        for(int length = 0; length < table.length; length++) {
+            byte[] truncated = Arrays.copyOf(table, length);
+            assertThrows(WrapperException.class, () -> CommandDescriptor.stringTableFromBinary(truncated));
+        }
+        // Corrupt lengths, indices and tags either still decode or are rejected, but never fail any other way
+        for(int i = 0; i < payload.length; i++) {
+            for(int value : new int[] { 0x00, 0x7F, 0xFF }) {
+                byte[] corrupt = payload.clone();
+                corrupt[i] = (byte) value;
+                try {
+                    CommandDescriptor.fromBinary(corrupt, strings);
+                } catch(WrapperException e) {
+                    // Expected for most bytes
+                }
+            }
+        }
+        // A table that is shorter than the payload claims
+        assertThrows(WrapperException.class,
+                () -> CommandDescriptor.fromBinary(payload, Arrays.copyOf(strings, strings.length - 1)));
+    }
+
+    @Test
+    public void rebuildsTheStringTableOnceMostOfItIsUnused() throws Exception {
+        CommandDescriptorBinaryWriter writer = new CommandDescriptorBinaryWriter();
+        CommandDescriptor[] renamed = new CommandDescriptor[CommandDescriptorBinaryWriter.MIN_STRINGS_TO_PRUNE];
+        for(int i = 0; i < renamed.length; i++)
+            renamed[i] = descriptor(i, "Renamed" + i);
+        writer.write(renamed);
+        String[] oldStrings = CommandDescriptor.stringTableFromBinary(writer.writeStringTable());
+
+        CommandDescriptor drive = descriptor(0, "Drive");
+        byte[] payload = writer.write(new CommandDescriptor[] { drive });
+        assertTrue(writer.haveStringsChanged());
+        String[] strings = CommandDescriptor.stringTableFromBinary(writer.writeStringTable());
+        assertArrayEquals(new String[] { "Drive", "frc.robot.commands.Drive" }, strings);
+        // A decoder that still has the old table must wait for the new one rather than decode the wrong strings
+        assertThrows(WrapperException.class, () -> CommandDescriptor.fromBinary(payload, oldStrings));
+        assertEquals(json(drive), json(CommandDescriptor.fromBinary(payload, strings)[0]));
+
+        // Small tables are never rebuilt
+        writer.write(new CommandDescriptor[0]);
+        assertFalse(writer.haveStringsChanged());
+    }
+
+}
@@ -0,0 +1,139 @@
+package org.carlmontrobotics.commandvisualizer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import edu.wpi.first.wpilibj2.command.CommandBase;
+import edu.wpi.first.wpilibj2.command.Subsystem;
+
+public class CommandDescriptorFactoryTest {
+
+    @BeforeAll
+    public static void initializeHal() {
+        TestFixtures.initializeHal();
+    }
+
+    // Describers are registered globally, so each test uses its own command classes
+    private static class Arm extends CommandBase {}
+
+    private static class ArmUp extends Arm {}
+
+    private static class Elevator implements Subsystem {}
+
+    private static class Lift extends CommandBase {}
+
+    private static class Grip extends CommandBase {}
+
+    // Composes the same command twice, like a group that reuses a command
+    private static class GripTwice extends CommandBase {
+        final Grip grip = new Grip();
+    }
+
+    @Test
+    public void registeringDescribersInvalidatesResolutions() {
+        ArmUp command = new ArmUp();
+        CommandDescriptorFactory.nextGeneration();
+        CommandDescriptor descriptor = CommandDescriptorFactory.fromCommand(command, false);
+        assertNull(descriptor.describer);
+        assertTrue(descriptor.parameters.isEmpty());
+
+        // The subclass resolved to no describer, which must not stay cached
+        CommandDescriber<Arm> armDescriber = (armDescriptor, arm, isRunning) -> armDescriptor.parameters
+                .putString("describedAs", "Arm");
+        CommandDescriptorFactory.registerDescriber(Arm.class, armDescriber);
+        CommandDescriptorFactory.nextGeneration();
+        assertSame(descriptor, CommandDescriptorFactory.fromCommand(command, false));
+        assertEquals(armDescriber.getClass().getName(), descriptor.describer);
+        assertEquals("Arm", descriptor.parameters.get("describedAs"));
+
+        // A describer registered for the subclass itself takes precedence
+        CommandDescriber<ArmUp> armUpDescriber = (armUpDescriptor, armUp, isRunning) -> armUpDescriptor.parameters
+                .putString("describedAs", "ArmUp");
+        CommandDescriptorFactory.registerDescriber(ArmUp.class, armUpDescriber);
+        CommandDescriptorFactory.nextGeneration();
+        CommandDescriptorFactory.fromCommand(command, false);
+        assertEquals(armUpDescriber.getClass().getName(), descriptor.describer);
+        assertEquals("ArmUp", descriptor.parameters.get("describedAs"));
+    }
+
+    @Test
+    public void refreshesStructureWhenCommandChanges() {
+        Lift command = new Lift();
+        CommandDescriptorFactory.nextGeneration();
+        CommandDescriptor descriptor = CommandDescriptorFactory.fromCommand(command, false);
+        CommandStructure structure = descriptor.structure;
+        assertEquals("Lift", descriptor.name);
+        assertEquals(Lift.class.getName(), descriptor.clazz);
+        assertArrayEquals(new String[0], descriptor.requirements);
+
+        CommandDescriptorFactory.nextGeneration();
+        CommandDescriptorFactory.fromCommand(command, true);
+        assertSame(structure, descriptor.structure);
+
+        command.setName("Lift to top");
+        command.addRequirements(new Elevator());
+        CommandDescriptorFactory.nextGeneration();
+        CommandDescriptorFactory.fromCommand(command, true);
+        assertNotSame(structure, descriptor.structure);
+        assertEquals("Lift to top", descriptor.name);
+        assertArrayEquals(new String[] { Elevator.class.getName() }, descriptor.requirements);
+    }
+
+    @Test
+    public void describesSharedCommandsOncePerGeneration() {
+        int[] gripDescribed = { 0 };
+        CommandDescriptorFactory.registerDescriber(Grip.class, (descriptor, grip, isRunning) -> gripDescribed[0]++);
+        // Describes the shared command through both of its references
+        CommandDescriptorFactory.registerDescriber(GripTwice.class, (descriptor, command, isRunning) -> {
+            descriptor.subCommands = new CommandDescriptor[] {
+                    CommandDescriptorFactory.fromCommand(command.grip, false),
+                    CommandDescriptorFactory.fromCommand(command.grip, false) };
+        });
+        GripTwice command = new GripTwice();
+
+        CommandDescriptorFactory.nextGeneration();
+        CommandDescriptor descriptor = CommandDescriptorFactory.fromCommand(command, false);
+        assertEquals(1, gripDescribed[0]);
+        assertSame(descriptor.subCommands[0], descriptor.subCommands[1]);
+        // Describing the group again in the same generation describes nothing
+        assertSame(descriptor, CommandDescriptorFactory.fromCommand(command, false));
+        assertEquals(1, gripDescribed[0]);
+
+        // Finding out that the shared command is running describes it again, but only once
+        CommandDescriptor grip = CommandDescriptorFactory.fromCommand(command.grip, true);
+        assertTrue(grip.isRunning);
+        assertEquals(2, gripDescribed[0]);
+        CommandDescriptorFactory.fromCommand(command.grip, true);
+        CommandDescriptorFactory.fromCommand(command.grip, false);
+        assertTrue(grip.isRunning);
+        assertEquals(2, gripDescribed[0]);
+
+        CommandDescriptorFactory.nextGeneration();
+        CommandDescriptorFactory.fromCommand(command, false);
+        assertEquals(3, gripDescribed[0]);
+        assertFalse(grip.isRunning);
+    }
+
+    @Test
+    public void evictsUndescribedDescriptorsButKeepsIds() {
+        Lift command = new Lift();
+        CommandDescriptorFactory.nextGeneration();
+        CommandDescriptor descriptor = CommandDescriptorFactory.fromCommand(command, false);
+
+        CommandDescriptorFactory.nextGeneration();
+        CommandDescriptorFactory.nextGeneration();
+        CommandDescriptorFactory.evictUndescribed(2);
+        assertTrue(CommandDescriptorFactory.descriptors.containsKey(command));
+        CommandDescriptorFactory.nextGeneration();
+        CommandDescriptorFactory.evictUndescribed(2);
+        assertFalse(CommandDescriptorFactory.descriptors.containsKey(command));
+
+        CommandDescriptor described = CommandDescriptorFactory.fromCommand(command, false);
+        assertNotSame(descriptor, described);
+        assertEquals(descriptor.id, described.id);
+        assertEquals(descriptor.id, CommandDescriptorFactory.getId(command));
+    }
+
+}
@@ -0,0 +1,51 @@
+package org.carlmontrobotics.commandvisualizer;
+
+import static org.carlmontrobotics.commandvisualizer.TestFixtures.descriptor;
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import edu.wpi.first.wpilibj2.command.Command.InterruptionBehavior;
+
+public class CommandDescriptorWriterTest {
+
+    @Test
+    public void matchesJackson() throws Exception {
+        CommandDescriptor root = descriptor(0, "Auto");
+        root.describer = "SequentialCommandGroupDescriber";
+        root.isRunning = true;
+        root.runsWhenDisabled = true;
+        root.interruptionBehavior = InterruptionBehavior.kCancelIncoming;
+        root.requirements = new String[] { "frc.robot.subsystems.Arm" };
+        root.parameters.putDouble("timeElapsed", 1.25);
+        root.parameters.putLong("currentCommandIndex", 1);
+        root.parameters.putBoolean("hasFinished", false);
+        root.parameters.putString("selected", "Left \"\u2713\"");
+        root.parameters.put("options", new String[] { "Left", "Right" });
+        root.parameters.put("count", 3);
+        root.parameters.put("nothing", null);
+
+        CommandDescriptor child = descriptor(1, "Wait");
+        child.isComposed = true;
+        child.interruptionBehavior = null;
+        child.requirements = null;
+        child.parameters.putDouble("duration", Double.NaN);
+        root.subCommands = new CommandDescriptor[] { child, null };
+
+        CommandDescriptorWriter writer = new CommandDescriptorWriter();
+        assertEquals(CommandDescriptor.mapper.writeValueAsString(root), writer.write(root).toString());
+        CommandDescriptor[] descriptors = { root, descriptor(2, "Idle") };
+        assertEquals(CommandDescriptor.mapper.writeValueAsString(descriptors), writer.write(descriptors).toString());
+    }
+
+    @Test
+    public void writesEventsLikeJackson() throws Exception {
+        CommandEvent event = new CommandEvent();
+        event.type = CommandEvent.Type.INTERRUPT;
+        event.id = 7;
+        event.timestamp = 12.5;
+        assertEquals(event.toJson(), new CommandDescriptorWriter().writeEvent(event.type, event.id, event.timestamp)
+                .toString());
+    }
+
+}
@@ -0,0 +1,63 @@
+package org.carlmontrobotics.commandvisualizer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.carlmontrobotics.commandvisualizer.TestFixtures.TickingCommand;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
+
+public class CommandEventTest {
+
+    @BeforeAll
+    public static void initializeHal() {
+        TestFixtures.initializeHal();
+    }
+
+    @Test
+    public void dispatchesEventsInSchedulerOrder() throws Exception {
+        List<String> received = new ArrayList<>();
+        List<CommandEvent> logged = new ArrayList<>();
+        CommandEventListener listener = (type, id, timestamp) -> received.add("listener " + type + " " + id);
+        Consumer<String> logger = json -> {
+            try {
+                CommandEvent event = CommandEvent.fromJson(json);
+                logged.add(event);
+                received.add("logger " + event.type + " " + event.id);
+            } catch(Exception e) {
+                throw new RuntimeException(e);
+            }
+        };
+        CommandVisualizer.registerEventListener(listener);
+        CommandVisualizer.registerEventLogger(logger);
+        try {
+            TickingCommand drive = new TickingCommand(2);
+            TickingCommand intake = new TickingCommand(-1);
+            int driveId = CommandDescriptorFactory.getId(drive);
+            int intakeId = CommandDescriptorFactory.getId(intake);
+
+            CommandScheduler.getInstance().schedule(drive, intake);
+            CommandScheduler.getInstance().run();
+            CommandScheduler.getInstance().run();
+            intake.cancel();
+
+            assertEquals(List.of(
+                    "listener INITIALIZE " + driveId, "logger INITIALIZE " + driveId,
+                    "listener INITIALIZE " + intakeId, "logger INITIALIZE " + intakeId,
+                    "listener FINISH " + driveId, "logger FINISH " + driveId,
+                    "listener INTERRUPT " + intakeId, "logger INTERRUPT " + intakeId), received);
+            for(int i = 1; i < logged.size(); i++)
+                assertTrue(logged.get(i).timestamp >= logged.get(i - 1).timestamp);
+        } finally {
+            CommandVisualizer.unregisterEventListener(listener);
+            CommandVisualizer.unregisterEventLogger(logger);
+            CommandScheduler.getInstance().cancelAll();
+        }
+    }
+
+}
@@ -0,0 +1,123 @@
+package org.carlmontrobotics.commandvisualizer;
+
+import static org.carlmontrobotics.commandvisualizer.TestFixtures.descriptor;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class CommandFilterTest {
+
+    @Test
+    public void matchesNameGlobs() {
+        CommandDescriptor drive = descriptor(0, "DriveToPose");
+        assertTrue(CommandFilter.nameGlob("DriveToPose").matches(drive));
+        assertTrue(CommandFilter.nameGlob("Drive*").matches(drive));
+        assertTrue(CommandFilter.nameGlob("*To*").matches(drive));
+        assertTrue(CommandFilter.nameGlob("Drive?oPose").matches(drive));
+        assertTrue(CommandFilter.nameGlob("*").matches(drive));
+        assertTrue(CommandFilter.nameGlob("**Pose").matches(drive));
+        // The whole name must match
+        assertFalse(CommandFilter.nameGlob("Drive").matches(drive));
+        assertFalse(CommandFilter.nameGlob("*Drive").matches(drive));
+        assertFalse(CommandFilter.nameGlob("DriveToPose?").matches(drive));
+        assertFalse(CommandFilter.nameGlob("").matches(drive));
+        // Backtracks past an earlier partial match
+        assertTrue(CommandFilter.nameGlob("*o*ose").matches(drive));
+        assertFalse(CommandFilter.nameGlob("*o*oseX").matches(drive));
+
+        drive.name = null;
+        assertFalse(CommandFilter.nameGlob("*").matches(drive));
+    }
+
+    @Test
+    public void globsDoNotBacktrackExponentially() {
+        CommandDescriptor descriptor = descriptor(0, "a".repeat(10_000) + "b");
+        String glob = "*a".repeat(50) + "*c";
+        // A regular expression like this would not finish
+        assertTimeoutPreemptively(Duration.ofSeconds(5),
+                () -> assertFalse(CommandFilter.nameGlob(glob).matches(descriptor)));
+    }
+
+    @Test
+    public void matchesClassGlobs() {
+        CommandDescriptor drive = descriptor(0, "Drive");
+        assertTrue(CommandFilter.classGlob("frc.robot.commands.*").matches(drive));
+        assertTrue(CommandFilter.classGlob("*.Drive").matches(drive));
+        assertFalse(CommandFilter.classGlob("Drive").matches(drive));
+        assertTrue(CommandFilter.classMatching("frc\\.robot\\..*").matches(drive));
+        assertTrue(CommandFilter.nameMatching("D.*e").matches(drive));
+        assertFalse(CommandFilter.nameMatching("D").matches(drive));
+    }
+
+    @Test
+    public void matchesRequirementsBySimpleOrQualifiedName() {
+        CommandDescriptor lift = descriptor(0, "Lift");
+        lift.requirements = new String[] { "frc.robot.subsystems.Drivetrain", "frc.robot.Robot$Arm" };
+        assertTrue(CommandFilter.requiring("Drivetrain").matches(lift));
+        assertTrue(CommandFilter.requiring("frc.robot.subsystems.Drivetrain").matches(lift));
+        assertTrue(CommandFilter.requiring("Arm").matches(lift));
+        assertTrue(CommandFilter.requiring("Robot$Arm").matches(lift));
+        // Only whole class names match
+        assertFalse(CommandFilter.requiring("train").matches(lift));
+        assertFalse(CommandFilter.requiring("Elevator").matches(lift));
+        assertFalse(CommandFilter.requiring("Arm").matches(descriptor(1, "Idle")));
+    }
+
+    @Test
+    public void combinesFilters() {
+        CommandDescriptor drive = descriptor(0, "Drive");
+        CommandFilter named = CommandFilter.nameGlob("Drive");
+        CommandFilter running = CommandFilter.running();
+        assertFalse(running.matches(drive));
+        assertFalse(named.and(running).matches(drive));
+        assertTrue(named.or(running).matches(drive));
+
+        drive.isRunning = true;
+        assertTrue(running.matches(drive));
+        assertTrue(named.and(running).matches(drive));
+        assertFalse(CommandFilter.nameGlob("Shoot").and(running).matches(drive));
+        assertTrue(CommandFilter.nameGlob("Shoot").or(running).matches(drive));
+    }
+
+    @Test
+    public void matchesTreesThroughSubCommands() {
+        CommandDescriptor auto = descriptor(0, "Auto");
+        CommandDescriptor path = descriptor(1, "Path");
+        CommandDescriptor shoot = descriptor(2, "Shoot");
+        auto.subCommands = new CommandDescriptor[] { path, null };
+        path.subCommands = new CommandDescriptor[] { shoot };
+
+        CommandFilter filter = CommandFilter.nameGlob("Shoot");
+        assertFalse(filter.matches(auto));
+        assertTrue(filter.matchesTree(auto));
+        assertTrue(filter.matchesTree(shoot));
+        assertFalse(CommandFilter.nameGlob("Intake").matchesTree(auto));
+    }
+
+    @Test
+    public void selectsMatchingTopLevelCommands() throws Exception {
+        CommandDescriptor auto = descriptor(0, "Auto");
+        CommandDescriptor shoot = descriptor(1, "Shoot");
+        auto.subCommands = new CommandDescriptor[] { shoot };
+        CommandDescriptor drive = descriptor(2, "Drive");
+        CommandDescriptor idle = descriptor(3, "Idle");
+        CommandSubscription subscription = new CommandSubscription(
+                CommandFilter.nameGlob("Shoot").or(CommandFilter.nameGlob("Drive")));
+
+        List<CommandDescriptor> selected = subscription.select(new CommandDescriptor[] { auto, drive, idle });
+        // The group is selected with all of its sub commands
+        assertEquals(List.of(auto, drive), selected);
+        CommandDescriptorWriter writer = new CommandDescriptorWriter();
+        CommandJsonCache cache = new CommandJsonCache(writer);
+        cache.nextPublish();
+        assertEquals(writer.write(new CommandDescriptor[] { auto, drive }).toString(),
+                subscription.writeSnapshot(selected, cache));
+
+        assertSame(selected, subscription.select(new CommandDescriptor[] { idle }));
+        assertTrue(selected.isEmpty());
+    }
+
+}
@@ -0,0 +1,184 @@
+package org.carlmontrobotics.commandvisualizer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+public class CommandParametersTest {
+
+    private static CommandParameters describe(CommandParameters parameters, int tick) {
+        parameters.putDouble("timeElapsed", tick * 0.02);
+        parameters.putLong("currentCommandIndex", tick);
+        parameters.putBoolean("hasFinished", tick % 2 == 0);
+        parameters.putString("selected", "Left");
+        return parameters;
+    }
+
+    @Test
+    public void storesPrimitivesInTypedSlots() {
+        CommandParameters parameters = describe(new CommandParameters(), 3);
+
+        assertEquals(4, parameters.size());
+        assertEquals("timeElapsed", parameters.getKey(0));
+        assertEquals(CommandParameters.DOUBLE, parameters.getKind(0));
+        assertEquals(0.06, parameters.getDouble(0));
+        assertEquals(CommandParameters.LONG, parameters.getKind(1));
+        assertEquals(3, parameters.getLong(1));
+        assertEquals(CommandParameters.BOOLEAN, parameters.getKind(2));
+        assertFalse(parameters.getBoolean(2));
+        assertEquals(CommandParameters.OBJECT, parameters.getKind(3));
+        assertEquals("Left", parameters.getObject(3));
+        assertThrows(IndexOutOfBoundsException.class, () -> parameters.getKind(4));
+    }
+
+    @Test
+    public void putUnboxesValues() {
+        CommandParameters parameters = new CommandParameters();
+        assertNull(parameters.put("speed", 0.5));
+        assertNull(parameters.put("ticks", 2L));
+        assertNull(parameters.put("enabled", true));
+        assertNull(parameters.put("nothing", null));
+
+        assertEquals(CommandParameters.DOUBLE, parameters.getKind(0));
+        assertEquals(CommandParameters.LONG, parameters.getKind(1));
+        assertEquals(CommandParameters.BOOLEAN, parameters.getKind(2));
+        assertEquals(CommandParameters.OBJECT, parameters.getKind(3));
+        assertTrue(parameters.containsKey("nothing"));
+
+        assertEquals(0.5, parameters.put("speed", "fast"));
+        assertEquals(CommandParameters.OBJECT, parameters.getKind(0));
+        assertEquals("fast", parameters.put("speed", 1.0));
+        assertEquals(CommandParameters.DOUBLE, parameters.getKind(0));
+        assertEquals(1.0, parameters.get("speed"));
+    }
+
+    @Test
+    public void reusesSlotsAcrossTicks() {
+        CommandParameters parameters = new CommandParameters();
+        for(int tick = 0; tick < 10; tick++)
+            describe(parameters, tick);
+
+        assertEquals(4, parameters.size());
+        assertEquals("timeElapsed", parameters.getKey(0));
+        assertEquals("selected", parameters.getKey(3));
+        assertEquals(9, parameters.getLong(1));
+
+        // Keys put out of order keep their slots
+        parameters.putString("selected", "Right");
+        parameters.putDouble("timeElapsed", 1);
+        parameters.putDouble("extra", 2);
+        assertEquals(5, parameters.size());
+        assertEquals("Right", parameters.getObject(3));
+        assertEquals(1, parameters.getDouble(0));
+        assertEquals("extra", parameters.getKey(4));
+    }
+
+    @Test
+    public void reusingSlotsDoesNotAllocate() {
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+                .getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+        long thread = Thread.currentThread().getId();
+
+        CommandParameters parameters = new CommandParameters();
+        for(int tick = 0; tick < 10_000; tick++)
+            describe(parameters, tick);
+
+        int ticks = 10_000;
+        long before = threads.getThreadAllocatedBytes(thread);
+        for(int tick = 0; tick < ticks; tick++)
+            describe(parameters, tick);
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+        // Allow for the measurement itself, but not for anything per tick
+        assertTrue(allocated < ticks, allocated + " bytes allocated");
+    }
+
+    @Test
+    public void removesAndClears() {
+        CommandParameters parameters = describe(new CommandParameters(), 4);
+
+        assertEquals(4L, parameters.remove("currentCommandIndex"));
+        assertNull(parameters.remove("currentCommandIndex"));
+        assertEquals(3, parameters.size());
+        assertEquals("hasFinished", parameters.getKey(1));
+        assertTrue(parameters.getBoolean(1));
+        assertEquals("Left", parameters.getObject(2));
+
+        // Putting the removed key again appends it
+        describe(parameters, 5);
+        assertEquals(4, parameters.size());
+        assertEquals("currentCommandIndex", parameters.getKey(3));
+        assertEquals(5, parameters.getLong(3));
+
+        parameters.clear();
+        assertTrue(parameters.isEmpty());
+        assertNull(parameters.get("selected"));
+        describe(parameters, 6);
+        assertEquals("timeElapsed", parameters.getKey(0));
+        assertEquals(4, parameters.size());
+    }
+
+    @Test
+    public void removesThroughIterator() {
+        CommandParameters parameters = describe(new CommandParameters(), 1);
+        Iterator<Map.Entry<String, Object>> iterator = parameters.entrySet().iterator();
+        assertThrows(IllegalStateException.class, iterator::remove);
+        while(iterator.hasNext()) {
+            if(!(iterator.next().getValue() instanceof Double))
+                iterator.remove();
+        }
+
+        assertEquals(1, parameters.size());
+        assertEquals(0.02, parameters.get("timeElapsed"));
+    }
+
+    @Test
+    public void equalsOtherMaps() {
+        Map<String, Object> expected = new LinkedHashMap<>();
+        expected.put("timeElapsed", 0.04);
+        expected.put("currentCommandIndex", 2L);
+        expected.put("hasFinished", true);
+        expected.put("selected", "Left");
+
+        CommandParameters parameters = describe(new CommandParameters(), 2);
+        assertEquals(expected, parameters);
+        assertEquals(parameters, expected);
+        assertEquals(expected.hashCode(), parameters.hashCode());
+        assertEquals(expected.toString(), parameters.toString());
+    }
+
+    @Test
+    public void copiesAreIndependent() {
+        String[] options = { "Left", "Right" };
+        CommandParameters parameters = describe(new CommandParameters(), 1);
+        parameters.put("options", options);
+        CommandParameters copy = parameters.copy();
+        assertEquals(parameters.keySet(), copy.keySet());
+        assertNotSame(options, copy.get("options"));
+
+        describe(parameters, 2);
+        options[0] = "Center";
+        assertEquals(0.02, copy.get("timeElapsed"));
+        assertArrayEquals(new String[] { "Left", "Right" }, (String[]) copy.get("options"));
+
+        // Copying again reuses the copy's slots and its own String[]
+        String[] copiedOptions = (String[]) copy.get("options");
+        copy.copyFrom(parameters);
+        assertSame(copiedOptions, copy.get("options"));
+        assertArrayEquals(options, (String[]) copy.get("options"));
+        assertEquals(0.04, copy.get("timeElapsed"));
+
+        // Copying fewer parameters drops the rest
+        copy.copyFrom(new CommandParameters());
+        assertTrue(copy.isEmpty());
+        assertFalse(copy.containsKey("options"));
+    }
+
+}
@@ -0,0 +1,160 @@
+package org.carlmontrobotics.commandvisualizer;
+
+import static org.carlmontrobotics.commandvisualizer.TestFixtures.descriptor;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class CommandStreamServerTest {
+
+    private CommandStreamServer server;
+    private final List<Socket> sockets = new ArrayList<>();
+
+    @BeforeAll
+    public static void initializeHal() {
+        TestFixtures.initializeHal();
+    }
+
+    @BeforeEach
+    public void startServer() throws IOException {
+        server = CommandStreamServer.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        // Only keyframes sent to a single client, so that a resynchronization can be told apart
+        CommandVisualizer.setKeyframeInterval(Integer.MAX_VALUE);
+    }
+
+    @AfterEach
+    public void stopServer() throws IOException {
+        server.stop();
+        // The server closes every connection once it has unregistered from the visualizer
+        for(Socket socket : sockets) {
+            try {
+                while(socket.getInputStream().read() >= 0)
+                    ;
+            } catch(IOException e) {
+                // Reset rather than closed, which is just as closed
+            }
+            socket.close();
+        }
+        CommandVisualizer.setKeyframeInterval(50);
+    }
+
+    private Socket connect(String path, int receiveBufferSize) throws IOException {
+        Socket socket = new Socket();
+        sockets.add(socket);
+        if(receiveBufferSize > 0)
+            socket.setReceiveBufferSize(receiveBufferSize);
+        socket.setSoTimeout(10_000);
+        socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort()));
+        OutputStream output = socket.getOutputStream();
+        output.write(("GET " + path + " HTTP/1.1\r\nHost: localhost\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+        output.flush();
+        return socket;
+    }
+
+    // Reads the response headers, which are sent once the server has registered the client's stream. Errors are
+    // read up to the server closing the connection, after which it no longer counts as a client.
+    private static BufferedReader readHeaders(Socket socket, String expectedStatus) throws IOException {
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        assertEquals("HTTP/1.1 " + expectedStatus, reader.readLine());
+        while(!reader.readLine().isEmpty())
+            ;
+        if(!expectedStatus.equals("200 OK"))
+            assertNull(reader.readLine());
+        return reader;
+    }
+
+    private static CommandDescriptorDelta readDelta(BufferedReader reader) throws IOException {
+        assertEquals("event: delta", reader.readLine());
+        String data = reader.readLine();
+        assertTrue(data.startsWith("data: "), data);
+        assertEquals("", reader.readLine());
+        return CommandDescriptorDelta.fromJson(data.substring("data: ".length()));
+    }
+
+    @Test
+    public void streamsKeyframeThenDeltas() throws Exception {
+        BufferedReader reader = readHeaders(connect("/commands", 0), "200 OK");
+        assertEquals(1, server.getClientCount());
+        CommandDescriptor drive = descriptor(1000, "Drive");
+        drive.parameters.putDouble("speed", 0.5);
+        CommandDescriptor intake = descriptor(1001, "Intake");
+        CommandVisualizer.publish(new CommandDescriptor[] { drive, intake });
+
+        CommandDescriptorDeltaApplier applier = new CommandDescriptorDeltaApplier();
+        CommandDescriptorDelta delta = readDelta(reader);
+        assertTrue(delta.isKeyframe);
+        assertTrue(applier.apply(delta));
+        assertEquals(2, applier.getDescriptors().length);
+
+        drive.parameters.putDouble("speed", 0.75);
+        CommandVisualizer.publish(new CommandDescriptor[] { drive, intake });
+        delta = readDelta(reader);
+        assertFalse(delta.isKeyframe);
+        assertEquals(1, delta.changed.length);
+        assertTrue(applier.apply(delta));
+        assertEquals(0.75, applier.getDescriptors()[0].parameters.get("speed"));
+    }
+
+    @Test
+    public void resynchronizesLaggingClients() throws Exception {
+        BufferedReader reader = readHeaders(connect("/commands", 4096), "200 OK");
+        CommandDescriptor drive = descriptor(1002, "Drive");
+        char[] padding = new char[64 * 1024];
+        Arrays.fill(padding, 'x');
+        String trajectory = new String(padding);
+
+        // Far more than the socket buffers and the client's queue hold while the client reads nothing
+        int publishes = 200;
+        for(int i = 0; i < publishes; i++) {
+            drive.parameters.putLong("step", i);
+            drive.parameters.putString("trajectory", i + trajectory);
+            CommandVisualizer.publish(new CommandDescriptor[] { drive });
+        }
+
+        CommandDescriptorDeltaApplier applier = new CommandDescriptorDeltaApplier();
+        int keyframes = 0;
+        long step;
+        do {
+            CommandDescriptorDelta delta = readDelta(reader);
+            if(delta.isKeyframe)
+                keyframes++;
+            // Dropped deltas are never applied out of sequence
+            assertTrue(applier.apply(delta));
+            step = ((Number) applier.getDescriptors()[0].parameters.get("step")).longValue();
+        } while(step < publishes - 1);
+        // The first keyframe and at least one sent to catch up
+        assertTrue(keyframes >= 2, keyframes + " keyframes");
+        assertFalse(applier.needsKeyframe());
+    }
+
+    @Test
+    public void limitsStreamsAndClients() throws Exception {
+        for(int i = 0; i < CommandStreamServer.MAX_STREAMS; i++)
+            readHeaders(connect("/commands?name=Drive" + i, 0), "200 OK");
+        readHeaders(connect("/commands?name=Intake", 0), "503 Service Unavailable");
+        // Queries that are already streamed are still served
+        readHeaders(connect("/commands?name=Drive0", 0), "200 OK");
+
+        while(server.getClientCount() < CommandStreamServer.MAX_CLIENTS)
+            readHeaders(connect("/commands?name=Drive0", 0), "200 OK");
+        readHeaders(connect("/commands?name=Drive0", 0), "503 Service Unavailable");
+        assertEquals(CommandStreamServer.MAX_CLIENTS, server.getClientCount());
+    }
+
+}
@@ -0,0 +1,64 @@
+package org.carlmontrobotics.commandvisualizer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.function.Consumer;
+
+import org.carlmontrobotics.commandvisualizer.TestFixtures.TickingCommand;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
+
+public class CommandVisualizerTest {
+
+    @BeforeAll
+    public static void initializeHal() {
+        TestFixtures.initializeHal();
+    }
+
+    private static void runTicks(int ticks) {
+        for(int i = 0; i < ticks; i++)
+            CommandScheduler.getInstance().run();
+    }
+
+    @Test
+    public void evictsIdleCommandsAndThenTheirDescriptors() {
+        Consumer<CommandDescriptor[]> listener = descriptors -> {};
+        CommandVisualizer.registerDescriptorListener(listener);
+        CommandVisualizer.setMaxIdleCommands(0);
+        try {
+            TickingCommand command = new TickingCommand(1);
+            int id = CommandDescriptorFactory.getId(command);
+            CommandScheduler.getInstance().schedule(command);
+            runTicks(1);
+            assertTrue(CommandVisualizer.getAllCommands().contains(command));
+            assertTrue(CommandDescriptorFactory.descriptors.containsKey(command));
+
+            // Evicted on the tick after it finished
+            runTicks(1);
+            assertFalse(CommandVisualizer.getAllCommands().contains(command));
+            assertTrue(CommandDescriptorFactory.descriptors.containsKey(command));
+
+            // Descriptors are kept for a number of described snapshots, which do not advance while nothing
+            // receives them
+            CommandVisualizer.unregisterDescriptorListener(listener);
+            runTicks(200);
+            assertTrue(CommandDescriptorFactory.descriptors.containsKey(command));
+            CommandVisualizer.registerDescriptorListener(listener);
+            runTicks(101);
+            assertFalse(CommandDescriptorFactory.descriptors.containsKey(command));
+
+            // Running again publishes it with the same id
+            CommandScheduler.getInstance().schedule(command);
+            assertTrue(CommandVisualizer.getAllCommands().contains(command));
+            runTicks(1);
+            assertEquals(id, CommandDescriptorFactory.descriptors.get(command).id);
+        } finally {
+            CommandVisualizer.unregisterDescriptorListener(listener);
+            CommandVisualizer.setMaxIdleCommands(Integer.MAX_VALUE);
+            CommandScheduler.getInstance().cancelAll();
+        }
+    }
+
+}
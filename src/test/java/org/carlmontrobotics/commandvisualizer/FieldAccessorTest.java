@@ -0,0 +1,55 @@
+package org.carlmontrobotics.commandvisualizer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.lang.invoke.VarHandle;
+
+import org.junit.jupiter.api.Test;
+
+import edu.wpi.first.wpilibj2.command.ConditionalCommand;
+import edu.wpi.first.wpilibj2.command.ParallelCommandGroup;
+import edu.wpi.first.wpilibj2.command.ParallelDeadlineGroup;
+import edu.wpi.first.wpilibj2.command.ParallelRaceGroup;
+import edu.wpi.first.wpilibj2.command.RepeatCommand;
+import edu.wpi.first.wpilibj2.command.ScheduleCommand;
+import edu.wpi.first.wpilibj2.command.SelectCommand;
+import edu.wpi.first.wpilibj2.command.SequentialCommandGroup;
+import edu.wpi.first.wpilibj2.command.WaitCommand;
+import edu.wpi.first.wpilibj2.command.WaitUntilCommand;
+import edu.wpi.first.wpilibj2.command.WrapperCommand;
+
+public class FieldAccessorTest {
+
+    private static class Target {
+        private double speed = 0.5;
+        private String name = "Drive";
+    }
+
+    @Test
+    public void readsPrivateFields() {
+        VarHandle speed = FieldAccessor.find(Target.class, "speed");
+        VarHandle name = FieldAccessor.find(Target.class, "name");
+        Target target = new Target();
+        assertEquals(0.5, (double) speed.get(target));
+        assertEquals("Drive", (String) name.get(target));
+        assertSame(speed, FieldAccessor.find(Target.class, "speed"));
+    }
+
+    @Test
+    public void reportsMissingFields() {
+        assertThrows(WrapperException.class, () -> FieldAccessor.find(Target.class, "m_speed"));
+        assertNull(FieldAccessor.findOrNull(Target.class, "m_speed"));
+    }
+
+    @Test
+    public void resolvesEveryWPILibField() {
+        // A field renamed in WPILib would leave its describer unregistered
+        WPILibCommandDescribers.registerAll();
+        for(Class<?> clazz : new Class<?>[] { ConditionalCommand.class, ParallelCommandGroup.class,
+                ParallelDeadlineGroup.class, ParallelRaceGroup.class, RepeatCommand.class, ScheduleCommand.class,
+                SelectCommand.class, SequentialCommandGroup.class, WaitCommand.class, WaitUntilCommand.class,
+                WrapperCommand.class })
+            assertTrue(CommandDescriptorFactory.describers.containsKey(clazz), clazz.getName());
+    }
+
+}
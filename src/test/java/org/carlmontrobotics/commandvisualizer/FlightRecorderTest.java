@@ -0,0 +1,269 @@
+package org.carlmontrobotics.commandvisualizer;
+
+import static org.carlmontrobotics.commandvisualizer.TestFixtures.descriptor;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.carlmontrobotics.commandvisualizer.TestFixtures.TickingCommand;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
+
+public class FlightRecorderTest {
+
+    @TempDir
+    Path directory;
+
+    @BeforeAll
+    public static void initializeHal() {
+        TestFixtures.initializeHal();
+    }
+
+    private Path path() {
+        return directory.resolve("test.rec");
+    }
+
+    private long slotsWritten() throws Exception {
+        return ByteBuffer.wrap(Files.readAllBytes(path())).getLong(FlightRecorder.HEADER_NEXT_SEQUENCE) - 1;
+    }
+
+    @Test
+    public void replaysEventsAndSamples() throws Exception {
+        FlightRecorder recorder = FlightRecorder.open(path(), 64 * 1024, 1);
+        CommandDescriptor group = descriptor(0, "Auto");
+        CommandDescriptor drive = descriptor(1, "Drive");
+        CommandDescriptor intake = descriptor(2, "Intake");
+        group.subCommands = new CommandDescriptor[] { drive, intake };
+        group.isRunning = true;
+        group.parameters.putLong("currentCommandIndex", 0);
+        drive.parameters.putDouble("speed", 0.5);
+        drive.parameters.putBoolean("fieldRelative", true);
+        drive.parameters.putString("name", "not recorded");
+
+        recorder.sample(new CommandDescriptor[] { group }, 1);
+        recorder.onCommandEvent(CommandEvent.Type.INITIALIZE, 1, 1.5);
+        drive.isRunning = true;
+        drive.parameters.putDouble("speed", 0.75);
+        recorder.sample(new CommandDescriptor[] { group }, 2);
+        recorder.onCommandEvent(CommandEvent.Type.FINISH, 1, 2.5);
+        recorder.force();
+
+        FlightRecording recording = FlightRecording.read(path());
+        assertFalse(recording.isStructureTruncated());
+        assertEquals(1, recording.getStartTime());
+        assertEquals(2.5, recording.getEndTime());
+
+        CommandDescriptor[] commands = recording.getCommandsAt(1.2);
+        assertEquals(1, commands.length);
+        CommandDescriptor replayed = commands[0];
+        assertEquals("Auto", replayed.name);
+        assertEquals("frc.robot.commands.Auto", replayed.clazz);
+        assertTrue(replayed.isRunning);
+        assertEquals(Long.valueOf(0), replayed.parameters.get("currentCommandIndex"));
+        assertEquals(2, replayed.subCommands.length);
+        CommandDescriptor replayedDrive = replayed.subCommands[0];
+        assertEquals("Drive", replayedDrive.name);
+        assertTrue(replayedDrive.isComposed);
+        assertFalse(replayedDrive.isRunning);
+        assertEquals(0.5, replayedDrive.parameters.get("speed"));
+        assertEquals(true, replayedDrive.parameters.get("fieldRelative"));
+        assertFalse(replayedDrive.parameters.containsKey("name"));
+        assertEquals("Intake", replayed.subCommands[1].name);
+
+        replayedDrive = recording.getCommandsAt(1.6)[0].subCommands[0];
+        assertTrue(replayedDrive.isRunning);
+        assertEquals(0.5, replayedDrive.parameters.get("speed"));
+
+        replayedDrive = recording.getCommandsAt(2)[0].subCommands[0];
+        assertTrue(replayedDrive.isRunning);
+        assertEquals(0.75, replayedDrive.parameters.get("speed"));
+
+        assertFalse(recording.getCommandsAt(3)[0].subCommands[0].isRunning);
+    }
+
+    @Test
+    public void onlyRecordsChangedValues() throws Exception {
+        FlightRecorder recorder = FlightRecorder.open(path(), 64 * 1024, 1);
+        CommandDescriptor drive = descriptor(0, "Drive");
+        drive.parameters.putDouble("speed", 0.5);
+        drive.parameters.putBoolean("fieldRelative", true);
+        CommandDescriptor[] descriptors = { drive };
+
+        recorder.sample(descriptors, 1);
+        // The running state and both parameters
+        assertEquals(3, slotsWritten());
+        recorder.sample(descriptors, 2);
+        assertEquals(3, slotsWritten());
+
+        drive.parameters.putDouble("speed", 0.75);
+        recorder.sample(descriptors, 3);
+        assertEquals(4, slotsWritten());
+        // The event and then the running state it changed
+        recorder.onCommandEvent(CommandEvent.Type.INITIALIZE, 0, 3.5);
+        drive.isRunning = true;
+        recorder.sample(descriptors, 4);
+        assertEquals(6, slotsWritten());
+
+        // Everything is recorded again REFRESH_INTERVAL samples after the first
+        for(int i = 5; i < 1 + FlightRecorder.REFRESH_INTERVAL; i++)
+            recorder.sample(descriptors, i);
+        assertEquals(6, slotsWritten());
+        recorder.sample(descriptors, 1 + FlightRecorder.REFRESH_INTERVAL);
+        assertEquals(9, slotsWritten());
+    }
+
+    @Test
+    public void refreshesValuesOverwrittenByTheRing() throws Exception {
+        // Small enough that the ring wraps many times
+        FlightRecorder recorder = FlightRecorder.open(path(), 8 * 1024, 1);
+        CommandDescriptor drive = descriptor(0, "Drive");
+        drive.isRunning = true;
+        drive.parameters.putDouble("target", 3);
+        CommandDescriptor[] descriptors = { drive };
+
+        int samples = 10 * FlightRecorder.REFRESH_INTERVAL + 50;
+        for(int i = 0; i < samples; i++) {
+            drive.parameters.putDouble("elapsed", i);
+            recorder.sample(descriptors, i);
+        }
+
+        FlightRecording recording = FlightRecording.read(path());
+        assertTrue(recording.getStartTime() > 0);
+        CommandDescriptor replayed = recording.getCommandsAt(samples - 1)[0];
+        assertTrue(replayed.isRunning);
+        assertEquals(3.0, replayed.parameters.get("target"));
+        assertEquals((double) samples - 1, replayed.parameters.get("elapsed"));
+    }
+
+    @Test
+    public void recordsStructureChanges() throws Exception {
+        FlightRecorder recorder = FlightRecorder.open(path(), 64 * 1024, 1);
+        CommandDescriptor group = descriptor(0, "Auto");
+        CommandDescriptor drive = descriptor(1, "Drive");
+        CommandDescriptor shoot = descriptor(2, "Shoot");
+        group.subCommands = new CommandDescriptor[] { drive };
+        recorder.sample(new CommandDescriptor[] { group, shoot }, 1);
+        group.subCommands = new CommandDescriptor[] { drive, shoot };
+        recorder.sample(new CommandDescriptor[] { group }, 2);
+
+        FlightRecording recording = FlightRecording.read(path());
+        CommandDescriptor[] before = recording.getCommandsAt(1);
+        assertEquals(2, before.length);
+        assertEquals(1, before[0].subCommands.length);
+        assertEquals("Shoot", before[1].name);
+        assertFalse(before[1].isComposed);
+
+        CommandDescriptor[] after = recording.getCommandsAt(2);
+        assertEquals(1, after.length);
+        assertEquals(2, after[0].subCommands.length);
+        assertEquals("Shoot", after[0].subCommands[1].name);
+        assertTrue(after[0].subCommands[1].isComposed);
+    }
+
+    @Test
+    public void leavesOutCommandsRecordedLater() throws Exception {
+        FlightRecorder recorder = FlightRecorder.open(path(), 64 * 1024, 1);
+        CommandDescriptor drive = descriptor(0, "Drive");
+        CommandDescriptor shoot = descriptor(1, "Shoot");
+        recorder.sample(new CommandDescriptor[] { drive }, 1);
+        recorder.sample(new CommandDescriptor[] { drive, shoot }, 2);
+
+        FlightRecording recording = FlightRecording.read(path());
+        assertEquals(1, recording.getCommandsAt(1.5).length);
+        assertEquals(2, recording.getCommandsAt(2).length);
+        assertEquals(0, recording.getCommandsAt(0.5).length);
+    }
+
+    @Test
+    public void recordsRenamedCommands() throws Exception {
+        FlightRecorder recorder = FlightRecorder.open(path(), 64 * 1024, 1);
+        CommandDescriptor drive = descriptor(0, "Drive");
+        CommandStructure.of(new TickingCommand(-1)).applyTo(drive);
+        recorder.sample(new CommandDescriptor[] { drive }, 1);
+        TickingCommand renamed = new TickingCommand(-1);
+        renamed.setName("Drive slowly");
+        CommandStructure.of(renamed).applyTo(drive);
+        recorder.sample(new CommandDescriptor[] { drive }, 2);
+
+        FlightRecording recording = FlightRecording.read(path());
+        assertEquals("TickingCommand", recording.getCommandsAt(1)[0].name);
+        assertEquals("Drive slowly", recording.getCommandsAt(2)[0].name);
+    }
+
+    @Test
+    public void recordsLongsExactly() throws Exception {
+        FlightRecorder recorder = FlightRecorder.open(path(), 64 * 1024, 1);
+        CommandDescriptor drive = descriptor(0, "Drive");
+        drive.parameters.putLong("timestamp", Long.MAX_VALUE - 1);
+        drive.parameters.put("count", Integer.valueOf(3));
+        drive.parameters.put("speed", Float.valueOf(0.5f));
+        recorder.sample(new CommandDescriptor[] { drive }, 1);
+        drive.parameters.putLong("timestamp", Long.MAX_VALUE);
+        recorder.sample(new CommandDescriptor[] { drive }, 2);
+
+        CommandParameters parameters = FlightRecording.read(path()).getCommandsAt(1)[0].parameters;
+        assertEquals(Long.valueOf(Long.MAX_VALUE - 1), parameters.get("timestamp"));
+        assertEquals(Long.valueOf(3), parameters.get("count"));
+        assertEquals(Double.valueOf(0.5), parameters.get("speed"));
+        assertEquals(Long.valueOf(Long.MAX_VALUE),
+                FlightRecording.read(path()).getCommandsAt(2)[0].parameters.get("timestamp"));
+    }
+
+    @Test
+    public void skipsKeysPastTheShortIndexRange() throws Exception {
+        FlightRecorder recorder = FlightRecorder.open(path(), 8 * 1024 * 1024, 1);
+        CommandDescriptor drive = descriptor(0, "Drive");
+        // The name and class take the first two string indices
+        int keys = Short.MAX_VALUE + 3;
+        for(int i = 0; i < keys; i++)
+            drive.parameters.putLong("k" + i, i);
+        recorder.sample(new CommandDescriptor[] { drive }, 1);
+
+        // The running state and the keys that fit
+        assertEquals(1 + Short.MAX_VALUE - 1, slotsWritten());
+        CommandParameters parameters = FlightRecording.read(path()).getCommandsAt(1)[0].parameters;
+        assertEquals(Short.MAX_VALUE - 1, parameters.size());
+        assertEquals(Long.valueOf(Short.MAX_VALUE - 2), parameters.get("k" + (Short.MAX_VALUE - 2)));
+        assertFalse(parameters.containsKey("k" + (Short.MAX_VALUE - 1)));
+    }
+
+    @Test
+    public void closeStopsRecording() throws Exception {
+        FlightRecorder recorder = FlightRecorder.start(path(), 64 * 1024, 1);
+        TickingCommand drive = new TickingCommand(-1);
+        int driveId = CommandDescriptorFactory.getId(drive);
+        try {
+            CommandScheduler.getInstance().schedule(drive);
+            recorder.close();
+            recorder.close();
+            drive.cancel();
+            // Calls after closing must not touch the unmapped file
+            recorder.onCommandEvent(CommandEvent.Type.INITIALIZE, driveId, 2);
+            recorder.sample(new CommandDescriptor[] { descriptor(driveId, "Drive") }, 2);
+            recorder.force();
+        } finally {
+            recorder.close();
+            CommandScheduler.getInstance().cancelAll();
+        }
+
+        assertEquals(1, slotsWritten());
+        // The recording is complete, and starting again keeps it
+        FlightRecorder.start(path(), 64 * 1024, 1).close();
+        assertTrue(Files.exists(directory.resolve("test.rec.prev")));
+    }
+
+    @Test
+    public void sampleIntervalSkipsPublishes() throws Exception {
+        FlightRecorder recorder = FlightRecorder.open(path(), 64 * 1024, 5);
+        CommandDescriptor drive = descriptor(0, "Drive");
+        for(int i = 0; i < 4; i++)
+            recorder.sample(new CommandDescriptor[] { drive });
+        assertEquals(0, slotsWritten());
+    }
+
+}
@@ -0,0 +1,63 @@
+package org.carlmontrobotics.commandvisualizer;
+
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.wpilibj2.command.CommandBase;
+
+// Shared setup for the tests in this package
+final class TestFixtures {
+
+    private TestFixtures() {}
+
+    // A descriptor with only its identifying fields set, like one for a command that has not been described yet
+    static CommandDescriptor descriptor(int id, String name) {
+        CommandDescriptor descriptor = new CommandDescriptor();
+        descriptor.id = id;
+        descriptor.name = name;
+        descriptor.clazz = "frc.robot.commands." + name;
+        return descriptor;
+    }
+
+    // Compares descriptors by the JSON that is published for them
+    static String json(CommandDescriptor descriptor) throws Exception {
+        return new CommandDescriptorWriter().write(descriptor).toString();
+    }
+
+    // The command scheduler reports usage to the HAL, so tests that touch commands must initialize it first
+    static void initializeHal() {
+        HAL.initialize(500, 0);
+    }
+
+    // Finishes after executing for the given number of ticks, or runs until canceled. Runs while disabled, so that
+    // the scheduler runs it without a driver station.
+    static class TickingCommand extends CommandBase {
+
+        private final int ticks;
+        private int executed;
+
+        TickingCommand(int ticks) {
+            this.ticks = ticks;
+        }
+
+        @Override
+        public void initialize() {
+            executed = 0;
+        }
+
+        @Override
+        public void execute() {
+            executed++;
+        }
+
+        @Override
+        public boolean isFinished() {
+            return ticks >= 0 && executed >= ticks;
+        }
+
+        @Override
+        public boolean runsWhenDisabled() {
+            return true;
+        }
+
+    }
+
+}
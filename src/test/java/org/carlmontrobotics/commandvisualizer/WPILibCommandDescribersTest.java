@@ -0,0 +1,72 @@
+package org.carlmontrobotics.commandvisualizer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.InstantCommand;
+import edu.wpi.first.wpilibj2.command.PrintCommand;
+import edu.wpi.first.wpilibj2.command.SelectCommand;
+
+public class WPILibCommandDescribersTest {
+
+    @BeforeAll
+    public static void registerDescribers() {
+        TestFixtures.initializeHal();
+        WPILibCommandDescribers.registerAll();
+    }
+
+    private static SelectCommand select(String[] selectorValue, Command left, Command right) {
+        Map<Object, Command> commands = new LinkedHashMap<>();
+        commands.put("Left", left);
+        commands.put("Right", right);
+        return new SelectCommand(commands, () -> selectorValue[0]);
+    }
+
+    @Test
+    public void describesTheSelectedBranchFirst() {
+        String[] selectorValue = { "Right" };
+        Command left = new InstantCommand(), right = new InstantCommand();
+        SelectCommand command = select(selectorValue, left, right);
+        command.initialize();
+        // The selector has moved on since the branch was selected
+        selectorValue[0] = "Left";
+
+        CommandDescriptorFactory.nextGeneration();
+        CommandDescriptor descriptor = CommandDescriptorFactory.fromCommand(command, true);
+        assertEquals(2, descriptor.subCommands.length);
+        assertEquals(CommandDescriptorFactory.getId(right), descriptor.subCommands[0].id);
+        assertTrue(descriptor.subCommands[0].isRunning);
+        assertEquals(CommandDescriptorFactory.getId(left), descriptor.subCommands[1].id);
+        assertFalse(descriptor.subCommands[1].isRunning);
+        assertArrayEquals(new String[] { "Right", "Left" }, (String[]) descriptor.parameters.get("subCommandValues"));
+    }
+
+    @Test
+    public void describesSelectorValuesMatchingNoBranch() {
+        String[] selectorValue = { "Center" };
+        Command left = new InstantCommand(), right = new InstantCommand();
+        SelectCommand command = select(selectorValue, left, right);
+        command.initialize();
+
+        CommandDescriptorFactory.nextGeneration();
+        CommandDescriptor descriptor = CommandDescriptorFactory.fromCommand(command, true);
+        assertEquals(3, descriptor.subCommands.length);
+        assertEquals(PrintCommand.class.getName(), descriptor.subCommands[0].clazz);
+        assertEquals(CommandDescriptorFactory.getId(left), descriptor.subCommands[1].id);
+        assertEquals(CommandDescriptorFactory.getId(right), descriptor.subCommands[2].id);
+        assertArrayEquals(new String[] { "Center", "Left", "Right" },
+                (String[]) descriptor.parameters.get("subCommandValues"));
+
+        // Once the command finishes, only the branches are described
+        CommandDescriptorFactory.nextGeneration();
+        CommandDescriptorFactory.fromCommand(command, false);
+        assertEquals(2, descriptor.subCommands.length);
+    }
+
+}